@@ -0,0 +1,219 @@
+package net.krinsoft.privileges.benchmarks;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An enabled Privileges instance backed by synthetic config.yml, groups.yml and users.yml files in a temporary folder,
+ * running against the {@link Stubs stub server}.<br>
+ * Only the storage, groups and players are set up; commands, listeners, imports and metrics are left out.
+ * @author krinsdeath
+ */
+public final class Fixture {
+    // the worlds every fixture creates
+    public final static String[] WORLDS = { "world", "world_nether", "world_the_end" };
+    // the number of global and per-world nodes each group defines
+    private final static int NODES = 20;
+
+    private final File folder;
+    private final Privileges plugin;
+
+    private Fixture(File folder, YamlConfiguration groups, YamlConfiguration users) throws Exception {
+        this.folder = folder;
+        Stubs.reset();
+        for (String world : WORLDS) {
+            Stubs.addWorld(world);
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("default_group", "g0");
+        config.set("debug", false);
+        config.set("jobs.chunk_size", 500);
+        config.set("users.persist_default", false);
+        config.set("users.clean_old", false);
+        config.set("users.clean_after_days", 30);
+        config.set("storage.type", "yaml");
+        config.set("storage.flush_interval", 5);
+        config.set("storage.journal.enabled", false);
+        config.set("storage.journal.compact_after", 1000);
+        config.set("storage.cache.size", 1000);
+        config.set("storage.cache.expiry", 900);
+        config.set("storage.accept_edits", false);
+        config.save(new File(folder, "config.yml"));
+        groups.save(new File(folder, "groups.yml"));
+        users.save(new File(folder, "users.yml"));
+
+        plugin = new Privileges();
+        initialize(plugin, folder);
+        invoke("registerConfiguration");
+        invoke("registerPermissions");
+        invoke("updatePermissions");
+    }
+
+    /**
+     * Creates a fixture whose groups form a single chain, each group inheriting the one before it
+     * @param depth The number of groups
+     * @param users The number of users in users.yml
+     * @return The fixture
+     * @throws Exception If the fixture couldn't be set up
+     */
+    public static Fixture deep(int depth, int users) throws Exception {
+        YamlConfiguration groups = new YamlConfiguration();
+        for (int i = 0; i < depth; i++) {
+            group(groups, "g" + i, i + 1, i == 0 ? new ArrayList<String>() : Arrays.asList("g" + (i - 1)));
+        }
+        return new Fixture(folder(), groups, users(users, "g" + (depth - 1)));
+    }
+
+    /**
+     * Creates a fixture whose groups form stacked diamonds: each layer's groups inherit every group in the layer below, so
+     * every group is reachable along many paths
+     * @param layers The number of layers above the base group
+     * @param width The number of groups in each layer
+     * @param users The number of users in users.yml
+     * @return The fixture
+     * @throws Exception If the fixture couldn't be set up
+     */
+    public static Fixture diamond(int layers, int width, int users) throws Exception {
+        YamlConfiguration groups = new YamlConfiguration();
+        group(groups, "g0", 1, new ArrayList<String>());
+        List<String> below = Arrays.asList("g0");
+        int rank = 2;
+        for (int layer = 1; layer <= layers; layer++) {
+            List<String> current = new ArrayList<String>();
+            for (int i = 0; i < width; i++) {
+                String name = "l" + layer + "_" + i;
+                group(groups, name, rank++, below);
+                current.add(name);
+            }
+            below = current;
+        }
+        // a single group tops the last layer, so every benchmark can use the same top group
+        group(groups, "top", rank, below);
+        return new Fixture(folder(), groups, users(users, "top"));
+    }
+
+    /**
+     * Gets the fixture's enabled plugin
+     * @return The plugin
+     */
+    public Privileges getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Disables the plugin and deletes the fixture's files
+     */
+    public void close() {
+        plugin.onDisable();
+        Stubs.reset();
+        delete(folder);
+    }
+
+    private static void group(YamlConfiguration groups, String name, int rank, List<String> inheritance) {
+        String path = "groups." + name;
+        groups.set(path + ".rank", rank);
+        groups.set(path + ".inheritance", inheritance);
+        List<String> nodes = new ArrayList<String>();
+        nodes.add("group." + name);
+        for (int i = 0; i < NODES; i++) {
+            // every other group negates the nodes it shares with the groups below it
+            nodes.add((rank % 2 == 0 && i % 4 == 0 ? "-" : "") + "bench.node" + i);
+            nodes.add("bench." + name + ".node" + i);
+        }
+        groups.set(path + ".permissions", nodes);
+        for (String world : WORLDS) {
+            List<String> worldNodes = new ArrayList<String>();
+            for (int i = 0; i < NODES / 4; i++) {
+                worldNodes.add("bench." + world + ".node" + i);
+                worldNodes.add("bench." + name + "." + world + ".node" + i);
+            }
+            groups.set(path + ".worlds." + world, worldNodes);
+        }
+    }
+
+    private static YamlConfiguration users(int count, String group) {
+        YamlConfiguration users = new YamlConfiguration();
+        for (int i = 0; i < count; i++) {
+            String path = "users." + user(i);
+            users.set(path + ".group", group);
+            users.set(path + ".permissions", Arrays.asList("bench.user" + i, "-bench.node1"));
+            users.set(path + ".worlds.world", Arrays.asList("bench.user" + i + ".world"));
+            users.set(path + ".last_seen", System.currentTimeMillis());
+        }
+        return users;
+    }
+
+    /**
+     * Gets the name of the specified synthetic user
+     * @param index The user's index in users.yml
+     * @return The user's name
+     */
+    public static String user(int index) {
+        return "user" + index;
+    }
+
+    private static File folder() throws IOException {
+        File folder = File.createTempFile("privileges", "-bench");
+        if (!folder.delete() || !folder.mkdirs()) {
+            throw new IOException("Unable to create " + folder.getAbsolutePath());
+        }
+        return folder;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void initialize(Privileges plugin, File folder) throws Exception {
+        // JavaPlugin only exposes its setup to the plugin loader, so the loader's arguments are passed in reflectively
+        PluginDescriptionFile description = new PluginDescriptionFile("Privileges", "bench", Privileges.class.getName());
+        for (Method method : JavaPlugin.class.getDeclaredMethods()) {
+            if (!method.getName().equals("initialize")) { continue; }
+            Class<?>[] types = method.getParameterTypes();
+            Object[] args = new Object[types.length];
+            boolean data = true;
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == org.bukkit.Server.class) {
+                    args[i] = Stubs.getServer();
+                } else if (types[i] == PluginDescriptionFile.class) {
+                    args[i] = description;
+                } else if (types[i] == File.class) {
+                    // the data folder comes before the plugin's jar file
+                    args[i] = data ? folder : new File(folder, "Privileges.jar");
+                    data = false;
+                } else if (types[i] == ClassLoader.class) {
+                    args[i] = Privileges.class.getClassLoader();
+                }
+            }
+            method.setAccessible(true);
+            method.invoke(plugin, args);
+        }
+        // enabling the plugin through Bukkit would run onEnable, so only the flag is set
+        Field enabled = JavaPlugin.class.getDeclaredField("isEnabled");
+        enabled.setAccessible(true);
+        enabled.setBoolean(plugin, true);
+    }
+
+    private void invoke(String name) throws Exception {
+        Method method = Privileges.class.getDeclaredMethod(name);
+        method.setAccessible(true);
+        method.invoke(plugin);
+    }
+
+}
@@ -0,0 +1,127 @@
+package net.krinsoft.privileges.benchmarks;
+
+import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.groups.Group;
+import net.krinsoft.privileges.groups.InheritanceGraph;
+import net.krinsoft.privileges.groups.PermissionCompiler;
+import net.krinsoft.privileges.groups.PermissionTable;
+import net.krinsoft.privileges.groups.RankedGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures group construction, inheritance linearization and permission checks on deep and diamond-shaped hierarchies
+ * @author krinsdeath
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupBenchmark {
+    // the shape of the group hierarchy
+    @Param({ "deep", "diamond" })
+    public String shape;
+    // the number of groups in a deep hierarchy, or the number of layers in a diamond hierarchy
+    @Param({ "4", "32" })
+    public int size;
+
+    private Fixture fixture;
+    private Privileges plugin;
+    private String top;
+    private List<String> tree;
+    private PermissionTable table;
+    private Group group;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (shape.equals("deep")) {
+            fixture = Fixture.deep(size, 0);
+            top = "g" + (size - 1);
+        } else {
+            fixture = Fixture.diamond(size, 4, 0);
+            top = "top";
+        }
+        plugin = fixture.getPlugin();
+        tree = plugin.getGroupManager().getInheritanceGraph().getTree(top);
+        table = new PermissionCompiler(plugin).compile(top, tree);
+        group = plugin.getGroupManager().getGroup(top);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    /**
+     * Copies the top group's tree out of the loaded inheritance graph
+     */
+    @Benchmark
+    public List<String> calculateGroupTree() {
+        return plugin.getPlayerManager().calculateGroupTree(top);
+    }
+
+    /**
+     * Builds the inheritance graph from groups.yml and linearizes the top group's tree
+     */
+    @Benchmark
+    public List<String> buildGroupTree() {
+        return new InheritanceGraph(plugin).getTree(top);
+    }
+
+    /**
+     * Parses the top group's tree from groups.yml and compiles its permission table
+     */
+    @Benchmark
+    public PermissionTable compileGroup() {
+        return new PermissionCompiler(plugin).compile(top, tree);
+    }
+
+    /**
+     * Constructs the top group from its already compiled tree and table
+     */
+    @Benchmark
+    public Group constructGroup() {
+        return new RankedGroup(plugin, top, 1, tree, table);
+    }
+
+    /**
+     * Checks a node that's defined by the base group and negated further up the tree
+     */
+    @Benchmark
+    public boolean hasInheritedPermission() {
+        return group.hasPermission("bench.node0", "world");
+    }
+
+    /**
+     * Checks a world node defined by the top group
+     */
+    @Benchmark
+    public boolean hasWorldPermission() {
+        return group.hasPermission("bench." + top + ".world_nether.node1", "world_nether");
+    }
+
+    /**
+     * Checks a node that no group defines
+     */
+    @Benchmark
+    public boolean hasMissingPermission() {
+        return group.hasPermission("bench.missing", "world");
+    }
+
+}
@@ -0,0 +1,86 @@
+package net.krinsoft.privileges.benchmarks;
+
+import net.krinsoft.privileges.players.PlayerManager;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures registering a player's permissions on login and reconciling them when the player changes worlds
+ * @author krinsdeath
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerBenchmark {
+    // the number of groups in the players' inheritance tree
+    @Param({ "4", "32" })
+    public int depth;
+    // the number of online players
+    @Param({ "100" })
+    public int online;
+
+    private Fixture fixture;
+    private PlayerManager manager;
+    private Player[] players;
+    private World[] worlds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = Fixture.deep(depth, online);
+        worlds = new World[Fixture.WORLDS.length];
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i] = fixture.getPlugin().getServer().getWorld(Fixture.WORLDS[i]);
+        }
+        manager = fixture.getPlugin().getPlayerManager();
+        players = new Player[online];
+        for (int i = 0; i < online; i++) {
+            players[i] = Stubs.addPlayer(Fixture.user(i), worlds[0]);
+            manager.register(players[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    /**
+     * Re-registers an online player, rebuilding their master permissions and their attachment
+     */
+    @Benchmark
+    public boolean register() {
+        return manager.register(players[next++ % players.length]);
+    }
+
+    /**
+     * Moves an online player to the next world and reconciles their attachment
+     */
+    @Benchmark
+    public void changeWorld() {
+        int index = next++;
+        Player player = players[index % players.length];
+        World from = player.getWorld();
+        Stubs.teleport(player, worlds[(index / players.length + 1) % worlds.length]);
+        manager.changeWorld(player, from);
+    }
+
+}
@@ -0,0 +1,68 @@
+package net.krinsoft.privileges.benchmarks;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.configuration.ConfigurationSection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures fetching user nodes out of large users.yml files
+ * @author krinsdeath
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class StorageBenchmark {
+    // the number of users in users.yml
+    @Param({ "10000", "100000" })
+    public int users;
+
+    private Fixture fixture;
+    private Privileges plugin;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = Fixture.deep(4, users);
+        plugin = fixture.getPlugin();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    /**
+     * Fetches the node of a stored user, striding through users.yml so the lookups don't stay in one part of it
+     */
+    @Benchmark
+    public ConfigurationSection getUserNode() {
+        next = (next + 7919) % users;
+        return plugin.getUserNode(Fixture.user(next));
+    }
+
+    /**
+     * Fetches the node of a user who isn't stored, which builds a default node without saving it
+     */
+    @Benchmark
+    public ConfigurationSection getMissingUserNode() {
+        return plugin.getUserNode("missing");
+    }
+
+}
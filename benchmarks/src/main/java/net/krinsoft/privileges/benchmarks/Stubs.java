@@ -0,0 +1,292 @@
+package net.krinsoft.privileges.benchmarks;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.permissions.Permissible;
+import org.bukkit.permissions.PermissibleBase;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.ServerOperator;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicesManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Lightweight stand-ins for the parts of the Bukkit server that Privileges touches.<br>
+ * Each stub answers only the calls Privileges makes on its hot paths, and returns an empty value for everything else.
+ * Bukkit's server is a singleton, so every fixture in a JVM shares the same stub server and resets it.
+ * @author krinsdeath
+ */
+public final class Stubs {
+    private final static Logger logger = Logger.getLogger("Minecraft");
+    private final static Map<String, World> worlds = new LinkedHashMap<String, World>();
+    private final static Map<String, Player> players = new LinkedHashMap<String, Player>();
+    private final static Map<String, Permission> permissions = new HashMap<String, Permission>();
+    private final static PluginManager manager = stub(PluginManager.class, new PluginManagerHandler());
+    private final static BukkitScheduler scheduler = stub(BukkitScheduler.class, new Handler());
+    private final static ServicesManager services = stub(ServicesManager.class, new Handler());
+    private final static Server server = stub(Server.class, new ServerHandler());
+
+    static {
+        Bukkit.setServer(server);
+    }
+
+    private Stubs() {}
+
+    /**
+     * Gets the stub server, which is also the server returned by {@link Bukkit#getServer()}
+     * @return The server
+     */
+    public static Server getServer() {
+        return server;
+    }
+
+    /**
+     * Forgets every world, player and permission
+     */
+    public static void reset() {
+        worlds.clear();
+        players.clear();
+        permissions.clear();
+    }
+
+    /**
+     * Creates a world and adds it to the server
+     * @param name The world's name
+     * @return The world
+     */
+    public static World addWorld(String name) {
+        World world = stub(World.class, new WorldHandler(name));
+        worlds.put(name, world);
+        return world;
+    }
+
+    /**
+     * Creates an online player in the specified world and adds them to the server
+     * @param name The player's name
+     * @param world The player's world
+     * @return The player
+     */
+    public static Player addPlayer(String name, World world) {
+        PlayerHandler handler = new PlayerHandler(name, world);
+        Player player = stub(Player.class, handler);
+        handler.base = new PermissibleBase(player);
+        players.put(name.toLowerCase(), player);
+        return player;
+    }
+
+    /**
+     * Removes the specified player from the server
+     * @param player The player
+     */
+    public static void removePlayer(Player player) {
+        players.remove(player.getName().toLowerCase());
+    }
+
+    /**
+     * Moves the specified player to another world, without firing any events
+     * @param player The player
+     * @param world The player's new world
+     */
+    public static void teleport(Player player, World world) {
+        ((PlayerHandler) Proxy.getInvocationHandler(player)).world = world;
+    }
+
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    /**
+     * Answers the methods of Object, and returns an empty value from every other method
+     */
+    private static class Handler implements InvocationHandler {
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals") && args != null && args.length == 1) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode") && args == null) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("toString") && args == null) {
+                return method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+            return empty(method.getReturnType());
+        }
+
+        protected Object empty(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            } else if (type == double.class) {
+                return 0D;
+            } else if (type == float.class) {
+                return 0F;
+            } else if (type == short.class) {
+                return (short) 0;
+            } else if (type == byte.class) {
+                return (byte) 0;
+            } else if (type == char.class) {
+                return (char) 0;
+            } else if (type.isArray()) {
+                return Array.newInstance(type.getComponentType(), 0);
+            } else if (type.isAssignableFrom(HashSet.class)) {
+                return new HashSet<Object>();
+            } else if (type.isAssignableFrom(ArrayList.class)) {
+                return new ArrayList<Object>();
+            } else if (type.isAssignableFrom(HashMap.class)) {
+                return new HashMap<Object, Object>();
+            }
+            return null;
+        }
+    }
+
+    private static class ServerHandler extends Handler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getLogger")) {
+                return logger;
+            } else if (name.equals("getName")) {
+                return "Stub";
+            } else if (name.equals("getVersion") || name.equals("getBukkitVersion")) {
+                return "1.6.2-R0.1";
+            } else if (name.equals("getPluginManager")) {
+                return manager;
+            } else if (name.equals("getScheduler")) {
+                return scheduler;
+            } else if (name.equals("getServicesManager")) {
+                return services;
+            } else if (name.equals("isPrimaryThread")) {
+                return true;
+            } else if (name.equals("getWorlds")) {
+                return new ArrayList<World>(worlds.values());
+            } else if (name.equals("getWorld") && args[0] instanceof String) {
+                return worlds.get((String) args[0]);
+            } else if (name.equals("getOnlinePlayers")) {
+                return players.values().toArray(new Player[players.size()]);
+            } else if (name.equals("getPlayerExact") || name.equals("getPlayer")) {
+                return players.get(((String) args[0]).toLowerCase());
+            } else if (name.equals("getOfflinePlayer") && args[0] instanceof String) {
+                Player player = players.get(((String) args[0]).toLowerCase());
+                if (player != null) {
+                    return player;
+                }
+                return stub(OfflinePlayer.class, new OfflinePlayerHandler((String) args[0]));
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+
+    private static class PluginManagerHandler extends Handler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getPermission")) {
+                return permissions.get(((String) args[0]).toLowerCase());
+            } else if (name.equals("addPermission")) {
+                Permission perm = (Permission) args[0];
+                if (permissions.containsKey(perm.getName().toLowerCase())) {
+                    throw new IllegalArgumentException("The permission " + perm.getName() + " is already defined!");
+                }
+                permissions.put(perm.getName().toLowerCase(), perm);
+                return null;
+            } else if (name.equals("removePermission")) {
+                String perm = args[0] instanceof Permission ? ((Permission) args[0]).getName() : (String) args[0];
+                permissions.remove(perm.toLowerCase());
+                return null;
+            } else if (name.equals("getPermissions")) {
+                return new HashSet<Permission>(permissions.values());
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+
+    private static class WorldHandler extends Handler {
+        private final String name;
+
+        WorldHandler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("getName")) {
+                return name;
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+
+    private static class OfflinePlayerHandler extends Handler {
+        protected final String name;
+
+        OfflinePlayerHandler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String method_name = method.getName();
+            if (method_name.equals("getName")) {
+                return name;
+            } else if (method_name.equals("getServer")) {
+                return server;
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+
+    private static class PlayerHandler extends OfflinePlayerHandler {
+        // the player's permissions are calculated by Bukkit's own implementation
+        private PermissibleBase base;
+        private World world;
+
+        PlayerHandler(String name, World world) {
+            super(name);
+            this.world = world;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String method_name = method.getName();
+            if (method_name.equals("getWorld")) {
+                return world;
+            } else if (method_name.equals("getPlayer")) {
+                return proxy;
+            } else if (method_name.equals("isOnline")) {
+                return true;
+            } else if (method_name.equals("getDisplayName") || method_name.equals("getPlayerListName")) {
+                return name;
+            } else if (method_name.equals("isOp") || method_name.equals("setOp")) {
+                return super.invoke(proxy, method, args);
+            } else if (base != null && (method.getDeclaringClass() == Permissible.class || method.getDeclaringClass() == ServerOperator.class)) {
+                try {
+                    return method.invoke(base, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+
+}
@@ -19,6 +19,7 @@ import net.krinsoft.privileges.commands.GroupRemoveCommand;
 import net.krinsoft.privileges.commands.GroupRenameCommand;
 import net.krinsoft.privileges.commands.GroupSetCommand;
 import net.krinsoft.privileges.commands.InfoCommand;
+import net.krinsoft.privileges.commands.JobsCommand;
 import net.krinsoft.privileges.commands.ListCommand;
 import net.krinsoft.privileges.commands.LoadCommand;
 import net.krinsoft.privileges.commands.PermissionHandler;
@@ -35,10 +36,23 @@ import net.krinsoft.privileges.commands.UserPermSetCommand;
 import net.krinsoft.privileges.commands.UserResetCommand;
 import net.krinsoft.privileges.commands.VersionCommand;
 import net.krinsoft.privileges.groups.GroupManager;
+import net.krinsoft.privileges.groups.MemberIndex;
+import net.krinsoft.privileges.groups.PermissionSnapshot;
+import net.krinsoft.privileges.jobs.Job;
+import net.krinsoft.privileges.jobs.JobManager;
 import net.krinsoft.privileges.importer.ImportManager;
 import net.krinsoft.privileges.listeners.BlockListener;
 import net.krinsoft.privileges.listeners.PlayerListener;
 import net.krinsoft.privileges.players.PlayerManager;
+import net.krinsoft.privileges.api.PrivilegesService;
+import net.krinsoft.privileges.api.SnapshotService;
+import net.krinsoft.privileges.profiling.Profiler;
+import net.krinsoft.privileges.players.PlayerProfile;
+import net.krinsoft.privileges.storage.ShardedStorage;
+import net.krinsoft.privileges.storage.SqlStorage;
+import net.krinsoft.privileges.storage.Storage;
+import net.krinsoft.privileges.storage.WriteBehindQueue;
+import net.krinsoft.privileges.storage.YamlStorage;
 import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
@@ -51,6 +65,7 @@ import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionDefault;
 import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
@@ -60,7 +75,10 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -73,21 +91,29 @@ public class Privileges extends JavaPlugin {
     private int on_start_clean_period = 30;
     private boolean persist_default = true;
     private boolean read_only = false;
+    private boolean accept_edits = false;
+    // whether the files being loaded are accepted even if they were edited by hand
+    private boolean force_load = false;
 
-    // managers and handlers
-    private PlayerManager playerManager;
-    private GroupManager groupManager;
+    // managers and handlers; these are replaced on a reload, and read by other threads for the group snapshot
+    private volatile PlayerManager playerManager;
+    private volatile GroupManager groupManager;
     private CommandHandler commandHandler;
     private FileConfiguration   configuration;
     private File                configFile;
-    private FileConfiguration   users;
-    private File                userFile;
-    private FileConfiguration   groups;
-    private File                groupFile;
+    private Storage             storage;
+    private WriteBehindQueue    writer;
+    private MemberIndex         members;
+    // the snapshot served to other threads while a reload replaces the managers, or null while they're current
+    private volatile PermissionSnapshot reload_snapshot;
+    private JobManager          jobManager;
+    private final Profiler      profiler = new Profiler();
+    private final SnapshotService service = new SnapshotService(this);
 
     @Override
     public void onEnable() {
         registerConfiguration();
+        jobManager = new JobManager(this);
         registerPermissions();
         performImports();
         getServer().getScheduler().runTaskLater(this, new Runnable() {
@@ -101,21 +127,11 @@ public class Privileges extends JavaPlugin {
         }, 5L);
         registerEvents();
         registerCommands();
+        getServer().getServicesManager().register(PrivilegesService.class, service, this, ServicePriority.Normal);
         if (on_start_clean) {
             getServer().getScheduler().runTaskLater(this, new Runnable() {
                 public void run() {
-                    log("Removing old users from users.yml...");
-                    long timeout = 1000L * 60L * 60L * 24L * on_start_clean_period;
-                    for (OfflinePlayer player : getServer().getOfflinePlayers()) {
-                        if (System.currentTimeMillis() - player.getLastPlayed() >= timeout || player.isBanned()) {
-                            if ((getUsers().get(player.getName()) != null && !getUsers().getString(player.getName() + ".group").equals(getConfig().getString("default_group", "default"))) || player.isBanned()) {
-                                getUsers().set(player.getName(), null);
-                                debug("'" + player.getName() + "' removed from users.yml");
-                            }
-                        }
-                    }
-                    saveUsers();
-                    log("... done!");
+                    recordLastSeen();
                 }
             }, 1L);
         }
@@ -152,11 +168,7 @@ public class Privileges extends JavaPlugin {
                 }
                 @Override
                 public int getValue() {
-                    ConfigurationSection users = getUsers().getConfigurationSection("users");
-                    if (users != null) {
-                        return getUsers().getConfigurationSection("users").getKeys(false).size();
-                    }
-                    return 0;
+                    return getUserNames().size();
                 }
             });
             log("[Metrics] Tracking total number of users.");
@@ -169,7 +181,13 @@ public class Privileges extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        getServer().getServicesManager().unregisterAll(this);
+        if (jobManager != null) {
+            jobManager.cancelAll();
+        }
         playerManager.disable();
+        writer.close();
+        storage.close();
         //permissionManager.disable();
     }
 
@@ -199,22 +217,120 @@ public class Privileges extends JavaPlugin {
         return commandHandler.locateAndRunCommand(sender, allArgs);
     }
 
+    /**
+     * Records when each stored user who hasn't quit since last seen times were tracked was last on, from their player
+     * data, and then removes the old users. This reads each player's data once; after that the old users are found from
+     * the member index alone.
+     */
+    private void recordLastSeen() {
+        Set<String> users = getMemberIndex().getUnseenSince(1);
+        if (users.isEmpty()) {
+            cleanOldUsers();
+            return;
+        }
+        log("Recording when " + users.size() + " users were last seen...");
+        jobManager.submit(new Job("record last seen", getServer().getConsoleSender(), users) {
+            @Override
+            protected boolean select(String user) {
+                ConfigurationSection node = getStorage().getUser(user);
+                return node != null && node.getLong("last_seen", 0) == 0;
+            }
+
+            @Override
+            protected ConfigurationSection change(String user) {
+                ConfigurationSection node = getUserNode(user);
+                // players without any data were never seen, so they're as old as can be
+                node.set("last_seen", Math.max(1L, getServer().getOfflinePlayer(user).getLastPlayed()));
+                return node;
+            }
+
+            @Override
+            protected void finish(int changed) {
+                saveUsers();
+                log("... done! Recorded " + changed + " last seen times.");
+                cleanOldUsers();
+            }
+        });
+    }
+
+    /**
+     * Removes the users in the default group who haven't been seen for 'users.clean_after_days' days, and every banned user
+     */
+    private void cleanOldUsers() {
+        log("Removing old users from users.yml...");
+        final long timeout = 1000L * 60L * 60L * 24L * on_start_clean_period;
+        final long cutoff = System.currentTimeMillis() - timeout;
+        final String def = getConfig().getString("default_group", "default");
+        Set<String> users = getMemberIndex().getUnseenSince(cutoff);
+        for (OfflinePlayer player : getServer().getBannedPlayers()) {
+            users.add(player.getName().toLowerCase());
+        }
+        jobManager.submit(new Job("clean old users", getServer().getConsoleSender(), users) {
+            @Override
+            protected boolean select(String user) {
+                if (getServer().getPlayerExact(user) != null) {
+                    return false;
+                }
+                ConfigurationSection node = getStorage().getUser(user);
+                if (node == null) {
+                    return false;
+                }
+                if (getServer().getOfflinePlayer(user).isBanned()) {
+                    return true;
+                }
+                // users stored since the last seen times were recorded haven't quit yet, so they're kept
+                long seen = node.getLong("last_seen", 0);
+                return seen > 0 && seen < cutoff && def.equals(node.getString("group"));
+            }
+
+            @Override
+            protected ConfigurationSection change(String user) {
+                debug("'" + user + "' will be removed from users.yml");
+                return null;
+            }
+
+            @Override
+            protected void finish(int changed) {
+                saveUsers();
+                log("... done! " + changed + " old users removed.");
+            }
+        });
+    }
+
     public void reload() {
+        reload(false);
+    }
+
+    /**
+     * Loads the saved configuration again, without saving any changes to disk beforehand
+     * @param force Whether to accept files which were edited by hand, even if 'storage.accept_edits' is off
+     */
+    public void reload(boolean force) {
+        holdSnapshot();
         //permissionManager.clean();
-        playerManager.disable();
         groupManager.clean();
         configuration = null;
         configFile = null;
-        groups = null;
-        groupFile = null;
-        users = null;
-        userFile = null;
-        registerConfiguration();
-        registerPermissions();
-        updatePermissions();
+        writer.close();
+        storage.close();
+        storage = null;
+        members = null;
+        force_load = force;
+        try {
+            registerConfiguration();
+            registerPermissions();
+            updatePermissions();
+        } finally {
+            force_load = false;
+        }
     }
 
     private void registerPermissions() {
+        holdSnapshot();
+        if (playerManager != null) {
+            // release the previous manager's attachments
+            playerManager.disable();
+        }
         playerManager = new PlayerManager(this);
         groupManager = new GroupManager(this);
         registerDynamicPermissions();
@@ -230,9 +346,37 @@ public class Privileges extends JavaPlugin {
     }
 
     private void updatePermissions() {
-        groupManager.reload();
-        playerManager.reload();
-        //permissionManager.reload();
+        try {
+            groupManager.reload();
+            playerManager.reload();
+            //permissionManager.reload();
+        } finally {
+            // every group and online player is loaded again, so the new managers' snapshot and views are complete
+            reload_snapshot = null;
+            service.releaseViews();
+        }
+    }
+
+    /**
+     * Keeps serving the current snapshot and player views until the managers which are about to be replaced are fully
+     * loaded again
+     */
+    private void holdSnapshot() {
+        if (groupManager != null && reload_snapshot == null) {
+            reload_snapshot = groupManager.getSnapshot();
+        }
+        service.holdViews();
+    }
+
+    /**
+     * Gets the latest complete snapshot of the groups and the registered players' groups.<br>
+     * While the permissions are reloaded, this is the snapshot from before the reload. This is safe to call from any
+     * thread.
+     * @return The snapshot
+     */
+    public PermissionSnapshot getSnapshot() {
+        PermissionSnapshot held = reload_snapshot;
+        return held != null ? held : groupManager.getSnapshot();
     }
 
     private void registerConfiguration() {
@@ -243,33 +387,16 @@ public class Privileges extends JavaPlugin {
             saveConfig();
         }
 
-        userFile = new File(getDataFolder(), "users.yml");
-        if (!userFile.exists()) {
-            getUsers().setDefaults(YamlConfiguration.loadConfiguration(this.getClass().getResourceAsStream("/users.yml")));
-            getUsers().options().copyDefaults(true);
-            saveUsers();
-        }
-
-        groupFile = new File(getDataFolder(), "groups.yml");
-        if (!groupFile.exists()) {
-            getGroups().setDefaults(YamlConfiguration.loadConfiguration(this.getClass().getResourceAsStream("/groups.yml")));
-            getGroups().options().header(
-                    "Group ranks determine the order they are promoted in.\n" +
-                            "Lowest rank is 1, highest rank is 2,147,483,647.\n" +
-                            "Visit https://github.com/krinsdeath/Privileges/wiki for help with configuration\n" +
-                            "World nodes override global nodes for that group\n" +
-                            "Inherited groups are calculated first. Each group in the tree overrides any nodes\n" +
-                            "from the previous group.");
-            getGroups().options().copyDefaults(true);
-            saveGroups();
-        }
-
         if (getConfig().get("default_group") == null) {
             getConfig().set("default_group", "default");
             getConfig().set("debug", false);
             saveConfig();
         }
         debug = getConfig().getBoolean("debug", false);
+        if (getConfig().get("jobs.chunk_size") == null) {
+            getConfig().set("jobs.chunk_size", 500);
+            saveConfig();
+        }
         if (getConfig().get("users") == null) {
             getConfig().set("users.persist_default", true);
             getConfig().set("users.clean_old", true);
@@ -283,12 +410,72 @@ public class Privileges extends JavaPlugin {
         persist_default = getConfig().getBoolean("users.persist_default", true);
         on_start_clean = getConfig().getBoolean("users.clean_old", true);
         on_start_clean_period = getConfig().getInt("users.clean_after_days", 30);
+        registerStorage();
+    }
+
+    private void registerStorage() {
+        if (getConfig().get("storage") == null) {
+            getConfig().set("storage.type", "yaml");
+            saveConfig();
+        }
+        if (getConfig().get("storage.flush_interval") == null) {
+            getConfig().set("storage.flush_interval", 5);
+            saveConfig();
+        }
+        if (getConfig().get("storage.journal") == null) {
+            getConfig().set("storage.journal.enabled", true);
+            getConfig().set("storage.journal.compact_after", 1000);
+            saveConfig();
+        }
+        if (getConfig().get("storage.cache") == null) {
+            getConfig().set("storage.cache.size", 1000);
+            getConfig().set("storage.cache.expiry", 900);
+            saveConfig();
+        }
+        if (getConfig().get("storage.accept_edits") == null) {
+            getConfig().set("storage.accept_edits", false);
+            saveConfig();
+        }
+        accept_edits = getConfig().getBoolean("storage.accept_edits", false);
+        String type = getConfig().getString("storage.type", "yaml");
+        try {
+            if (type.equalsIgnoreCase("sqlite")) {
+                storage = new SqlStorage(this);
+            } else if (type.equalsIgnoreCase("sharded")) {
+                storage = new ShardedStorage(this);
+            }
+        } catch (IOException e) {
+            warn("Unable to open the '" + type + "' storage: " + e.getLocalizedMessage());
+            warn("Falling back to users.yml and groups.yml.");
+        }
+        if (storage == null) {
+            try {
+                storage = new YamlStorage(this);
+            } catch (IOException e) {
+                warn("An error occurred while creating the default users.yml and groups.yml.");
+                warn(e.getLocalizedMessage());
+            }
+        }
+        debug("Using '" + storage.getName() + "' storage.");
+        members = new MemberIndex();
+        storage.indexUsers(members);
+        long interval = Math.max(0, getConfig().getLong("storage.flush_interval", 5)) * 1000L;
+        writer = new WriteBehindQueue(this, storage, user_lock, interval);
     }
 
     public boolean isReadOnly() {
         return read_only;
     }
 
+    /**
+     * Checks whether users.yml and groups.yml are loaded as they are when they don't match their checksums, which means
+     * they were edited by hand
+     * @return true if the edits are accepted, otherwise false
+     */
+    public boolean acceptsEdits() {
+        return accept_edits || force_load;
+    }
+
     private void performImports() {
         // broken until I can improve it
         new ImportManager(this);
@@ -316,6 +503,7 @@ public class Privileges extends JavaPlugin {
         commandHandler.registerCommand(new DebugCommand(this));
         commandHandler.registerCommand(new DemoteCommand(this));
         commandHandler.registerCommand(new InfoCommand(this));
+        commandHandler.registerCommand(new JobsCommand(this));
         commandHandler.registerCommand(new ListCommand(this));
         commandHandler.registerCommand(new LoadCommand(this));
         commandHandler.registerCommand(new ProfilingCommand(this));
@@ -342,36 +530,157 @@ public class Privileges extends JavaPlugin {
         commandHandler.registerCommand(new UserResetCommand(this));
     }
 
+    /**
+     * Gets a copy of the specified user's node, creating the default node if they aren't stored yet.<br>
+     * Changes to the copy are only stored once it's passed to {@link #setUserNode(String, ConfigurationSection)}.
+     * @param player The name of the player
+     * @return The user's node
+     */
     public ConfigurationSection getUserNode(String player) {
-        ConfigurationSection user = getUsers().getConfigurationSection("users." + player);
-        if (!player.equals(player.toLowerCase()) && user != null) {
-            getUsers().set("users." + player.toLowerCase() + ".group", user.getString("group"));
-            getUsers().set("users." + player.toLowerCase() + ".permissions", user.getStringList("permissions"));
-            for (World w : getServer().getWorlds()) {
-                getUsers().set("users." + player.toLowerCase() + ".worlds." + w.getName(), user.getStringList("worlds." + w.getName()));
+        synchronized (user_lock) {
+            ConfigurationSection user = storage.getUser(player);
+            if (!player.equals(player.toLowerCase()) && user != null) {
+                ConfigurationSection node = new MemoryConfiguration();
+                node.set("group", user.getString("group"));
+                node.set("permissions", user.getStringList("permissions"));
+                for (World w : getServer().getWorlds()) {
+                    node.set("worlds." + w.getName(), user.getStringList("worlds." + w.getName()));
+                }
+                putUser(player.toLowerCase(), node);
+                putUser(player, null);
+                saveUsers();
+                debug("User node for '" + player + "' converted to lower case.");
+                return node;
             }
-            getUsers().set("users." + player, null);
-            saveUsers();
-            debug("User node for '" + player + "' converted to lower case.");
-            return getUsers().getConfigurationSection("users." + player.toLowerCase());
-        }
-        user = getUsers().getConfigurationSection("users." + player.toLowerCase());
-        if (user == null || user.getString("group") == null) {
-            String path = "users." + player.toLowerCase();
-            ConfigurationSection node = new MemoryConfiguration();
-            node.set("group", getConfig().getString("default_group", "default"));
-            node.set("permissions", null);
-            for (World w : getServer().getWorlds()) {
-                node.set("worlds." + w.getName(), null);
+            user = storage.getUser(player.toLowerCase());
+            if (user == null || user.getString("group") == null) {
+                ConfigurationSection node = new MemoryConfiguration();
+                node.set("group", getConfig().getString("default_group", "default"));
+                node.set("permissions", null);
+                for (World w : getServer().getWorlds()) {
+                    node.set("worlds." + w.getName(), null);
+                }
+                if (persist_default) {
+                    putUser(player.toLowerCase(), node);
+                    saveUsers();
+                }
+                debug("New user node for '" + player + "' created with default group '" + getConfig().getString("default_group", "default") + "'.");
+                return node;
             }
-            if (persist_default) {
-                getUsers().set("users." + player.toLowerCase(), node);
-                saveUsers();
+            return copyOf(user);
+        }
+    }
+
+    /**
+     * Stores the specified user's node, so that it's written on the next save
+     * @param player The name of the player
+     * @param node The user's node, or null to remove the user
+     */
+    public void setUserNode(String player, ConfigurationSection node) {
+        synchronized (user_lock) {
+            putUser(player.toLowerCase(), node);
+        }
+    }
+
+    /**
+     * Stores each of the specified users' nodes at once, so no other change to the users is stored in between
+     * @param nodes The users' nodes by name, with null nodes for the users to remove
+     */
+    public void setUserNodes(Map<String, ConfigurationSection> nodes) {
+        synchronized (user_lock) {
+            for (Map.Entry<String, ConfigurationSection> entry : nodes.entrySet()) {
+                putUser(entry.getKey().toLowerCase(), entry.getValue());
             }
-            debug("New user node for '" + player + "' created with default group '" + getConfig().getString("default_group", "default") + "'.");
-            user = node;
         }
-        return user;
+    }
+
+    private void putUser(String player, ConfigurationSection node) {
+        storage.setUser(player, node != null ? copyOf(node) : null);
+        if (members != null) {
+            members.update(player, node);
+        }
+        if (jobManager != null) {
+            jobManager.stored(player);
+        }
+    }
+
+    /**
+     * Copies a user node, so the stored records are only ever changed through {@link #setUserNode(String, ConfigurationSection)}
+     * while the writer thread may be reading them
+     * @param node The node to copy
+     * @return A detached copy of the node
+     */
+    private static ConfigurationSection copyOf(ConfigurationSection node) {
+        MemoryConfiguration copy = new MemoryConfiguration();
+        copyInto(node, copy);
+        return copy;
+    }
+
+    private static void copyInto(ConfigurationSection from, ConfigurationSection to) {
+        for (Map.Entry<String, Object> entry : from.getValues(false).entrySet()) {
+            if (entry.getValue() instanceof ConfigurationSection) {
+                copyInto((ConfigurationSection) entry.getValue(), to.createSection(entry.getKey()));
+            } else if (entry.getValue() instanceof List) {
+                to.set(entry.getKey(), new ArrayList<Object>((List<?>) entry.getValue()));
+            } else {
+                to.set(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Records the current time as the time the specified player was last seen, if they're stored
+     * @param player The name of the player
+     */
+    public void setLastSeen(String player) {
+        synchronized (user_lock) {
+            // getUserNode would create the default node for players who aren't stored
+            if (storage.getUser(player.toLowerCase()) == null) { return; }
+            ConfigurationSection user = getUserNode(player);
+            user.set("last_seen", System.currentTimeMillis());
+            setUserNode(player, user);
+        }
+        saveUsers();
+    }
+
+    /**
+     * Gets the index of the stored users by group, which the storage fills when it's loaded. If the storage is still
+     * filling it, this waits until it's done.
+     * @return The member index
+     */
+    public MemberIndex getMemberIndex() {
+        MemberIndex index = members;
+        index.awaitLoaded();
+        return index;
+    }
+
+    /**
+     * Gets the names of every user with a stored node
+     * @return A set of user names
+     */
+    public Set<String> getUserNames() {
+        synchronized (user_lock) {
+            return new HashSet<String>(storage.getUsers());
+        }
+    }
+
+    /**
+     * Reads the specified user's node into an immutable profile, without creating, converting or saving anything.<br>
+     * This is safe to call off the main thread.
+     * @param player The name of the player
+     * @return The player's profile
+     */
+    public PlayerProfile getUserProfile(String player) {
+        synchronized (user_lock) {
+            String def = getConfig().getString("default_group", "default");
+            ConfigurationSection user = storage.getUser(player.toLowerCase());
+            if (user != null && user.getString("group") != null) {
+                return new PlayerProfile(player, user, def, true);
+            }
+            // nodes which aren't lower case yet are converted the first time they're fetched on the main thread
+            user = storage.getUser(player);
+            return new PlayerProfile(player, user, def, false);
+        }
     }
 
     public ConfigurationSection getGroupNode(String group) {
@@ -391,44 +700,65 @@ public class Privileges extends JavaPlugin {
         }
     }
 
-    public FileConfiguration getUsers() {
-        if (users == null) {
-            users = YamlConfiguration.loadConfiguration(userFile);
-        }
-        return users;
+    /**
+     * Gets the registry of Privileges' latency metrics
+     * @return The profiler
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Gets the read-only query service other plugins load from the ServicesManager
+     * @return The query service
+     */
+    public SnapshotService getService() {
+        return service;
+    }
+
+    /**
+     * Gets the manager which runs bulk jobs against the stored users
+     * @return The job manager
+     */
+    public JobManager getJobManager() {
+        return jobManager;
+    }
+
+    /**
+     * Gets the storage backend which holds the user and group records
+     * @return The storage backend
+     */
+    public Storage getStorage() {
+        return storage;
     }
 
-    private boolean saving = false;
+    private final Object user_lock = new Object();
 
+    /**
+     * Queues the user records to be written on the next flush
+     */
     public void saveUsers() {
         if (read_only) { return; }
-        if (!saving) {
-            saving = true;
-            try {
-                debug("users.yml checksum: " + sha256(userFile));
-                getUsers().save(userFile);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            saving = false;
-        }
+        writer.markUsers();
     }
 
     public FileConfiguration getGroups() {
-        if (groups == null) {
-            groups = YamlConfiguration.loadConfiguration(groupFile);
-        }
-        return groups;
+        return storage.getGroups();
     }
 
+    /**
+     * Queues a snapshot of the group records to be written on the next flush
+     */
     public void saveGroups() {
         if (read_only) { return; }
-        try {
-            debug("groups.yml checksum: " + sha256(groupFile));
-            getGroups().save(groupFile);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        writer.markGroups();
+    }
+
+    /**
+     * Writes every queued user and group change, and waits until they're saved
+     */
+    public void flush() {
+        writer.flushNow();
     }
 
     public void log(String message) {
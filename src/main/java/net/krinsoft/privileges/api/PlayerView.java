@@ -0,0 +1,130 @@
+package net.krinsoft.privileges.api;
+
+import net.krinsoft.privileges.groups.GroupSnapshot;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable view of an online player's group and their resolved Privileges nodes on every world.<br>
+ * A new view is built whenever the player is registered, changes groups, or their group is recompiled. The nodes are the
+ * ones Privileges assigns: the group's tree overridden by the player's own nodes. Child nodes and permission defaults
+ * are left to Bukkit.
+ * @author krinsdeath
+ */
+public final class PlayerView {
+    // the player's lower case name
+    private final String name;
+    private final GroupSnapshot group;
+    // the resolved nodes for worlds without any specific nodes
+    private final Map<String, Boolean> global;
+    // the resolved nodes for every world with specific group or player nodes
+    private final Map<String, Map<String, Boolean>> worlds;
+
+    /**
+     * Resolves the nodes of the specified player. Views are only built by the {@link SnapshotService}.
+     * @param name The player's lower case name
+     * @param group The player's group
+     * @param global The player's own global nodes
+     * @param worlds The player's own nodes on each world which has any
+     */
+    PlayerView(String name, GroupSnapshot group, Map<String, Boolean> global, Map<String, Map<String, Boolean>> worlds) {
+        this.name = name;
+        this.group = group;
+        Set<String> names = new HashSet<String>(group.getWorlds());
+        names.addAll(worlds.keySet());
+        Map<String, Map<String, Boolean>> resolved = new HashMap<String, Map<String, Boolean>>();
+        for (String world : names) {
+            Map<String, Boolean> own = worlds.get(world);
+            resolved.put(world, resolve(group.getNodes(world), own != null ? own : global));
+        }
+        this.global = resolve(group.getNodes(null), global);
+        this.worlds = Collections.unmodifiableMap(resolved);
+    }
+
+    private static Map<String, Boolean> resolve(Map<String, Boolean> group, Map<String, Boolean> own) {
+        Map<String, Boolean> nodes = new LinkedHashMap<String, Boolean>(group);
+        nodes.putAll(own);
+        return Collections.unmodifiableMap(nodes);
+    }
+
+    /**
+     * Gets the player's lower case name
+     * @return The player's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    public GroupSnapshot getGroup() {
+        return group;
+    }
+
+    public int getRank() {
+        return group.getRank();
+    }
+
+    /**
+     * Gets the player's group's inheritance tree, starting at the base inherited group
+     * @return An unmodifiable list of group names
+     */
+    public List<String> getTree() {
+        return group.getTree();
+    }
+
+    /**
+     * Checks whether the player's group is or inherits the specified group
+     * @param group The name of the group
+     * @return true if the player is a member of the group, otherwise false
+     */
+    public boolean isMemberOf(String group) {
+        return this.group.isMemberOf(group);
+    }
+
+    /**
+     * Gets the player's resolved nodes on the specified world
+     * @param world The name of the world, or null for the global nodes
+     * @return An unmodifiable map of node names to their values
+     */
+    public Map<String, Boolean> getNodes(String world) {
+        if (world != null) {
+            Map<String, Boolean> nodes = worlds.get(world);
+            if (nodes != null) {
+                return nodes;
+            }
+        }
+        return global;
+    }
+
+    /**
+     * Gets the value of the specified node on the given world
+     * @param node The permission node
+     * @param world The name of the world, or null for the global nodes
+     * @return The node's value, or false if it isn't set
+     */
+    public boolean hasPermission(String node, String world) {
+        Boolean value = getNodes(world).get(node);
+        return value != null && value;
+    }
+
+    /**
+     * Checks whether the specified node is explicitly set on the given world
+     * @param node The permission node
+     * @param world The name of the world, or null for the global nodes
+     * @return true if the node is set, otherwise false
+     */
+    public boolean isSet(String node, String world) {
+        return getNodes(world).containsKey(node);
+    }
+
+    @Override
+    public String toString() {
+        return "PlayerView{name=" + name + ",group=" + group.getName() + ",worlds=" + worlds.keySet() + "}";
+    }
+
+}
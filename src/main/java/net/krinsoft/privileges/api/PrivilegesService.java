@@ -0,0 +1,45 @@
+package net.krinsoft.privileges.api;
+
+import net.krinsoft.privileges.groups.GroupSnapshot;
+import net.krinsoft.privileges.groups.PermissionSnapshot;
+
+import java.util.Collection;
+
+/**
+ * The read-only query API Privileges registers with Bukkit's ServicesManager.<br>
+ * Every method returns immutable, precomputed data without resolving, creating or saving anything, so it's safe to call
+ * from any thread, as often as needed. Load it with:
+ * <pre>
+ * PrivilegesService privileges = getServer().getServicesManager().load(PrivilegesService.class);
+ * </pre>
+ * @author krinsdeath
+ */
+public interface PrivilegesService {
+
+    /**
+     * Gets the view of the specified online player
+     * @param player The player's name (case-insensitive)
+     * @return The player's view, or null if the player isn't registered
+     */
+    public PlayerView getPlayer(String player);
+
+    /**
+     * Gets the specified group
+     * @param group The group's name (case-insensitive)
+     * @return The group, or null if it isn't loaded
+     */
+    public GroupSnapshot getGroup(String group);
+
+    /**
+     * Gets every loaded group
+     * @return An unmodifiable collection of groups
+     */
+    public Collection<GroupSnapshot> getGroups();
+
+    /**
+     * Gets the latest snapshot of the groups and the registered players' groups
+     * @return The snapshot
+     */
+    public PermissionSnapshot getSnapshot();
+
+}
@@ -0,0 +1,81 @@
+package net.krinsoft.privileges.api;
+
+import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.groups.GroupSnapshot;
+import net.krinsoft.privileges.groups.PermissionSnapshot;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link PrivilegesService} backed by the published group snapshot and player views.<br>
+ * The player manager publishes a new view on the main thread whenever a player is registered, changes groups, or their
+ * group is recompiled. While the permissions are reloaded, the views from before the reload are served instead.
+ * @author krinsdeath
+ */
+public class SnapshotService implements PrivilegesService {
+    private final Privileges plugin;
+    // each registered player's view, by lower case name
+    private final Map<String, PlayerView> views = new ConcurrentHashMap<String, PlayerView>();
+    // a copy of the views from before a reload, or null while the views are current
+    private volatile Map<String, PlayerView> held;
+
+    public SnapshotService(Privileges plugin) {
+        this.plugin = plugin;
+    }
+
+    public PlayerView getPlayer(String player) {
+        Map<String, PlayerView> copy = held;
+        return (copy != null ? copy : views).get(player.toLowerCase());
+    }
+
+    public GroupSnapshot getGroup(String group) {
+        return getSnapshot().getGroup(group);
+    }
+
+    public Collection<GroupSnapshot> getGroups() {
+        return getSnapshot().getGroups();
+    }
+
+    public PermissionSnapshot getSnapshot() {
+        return plugin.getSnapshot();
+    }
+
+    /**
+     * Builds and publishes a new view of the specified player
+     * @param name The player's name
+     * @param group The player's group
+     * @param global The player's own global nodes
+     * @param worlds The player's own nodes on each world which has any
+     */
+    public void publish(String name, GroupSnapshot group, Map<String, Boolean> global, Map<String, Map<String, Boolean>> worlds) {
+        views.put(name.toLowerCase(), new PlayerView(name.toLowerCase(), group, global, worlds));
+    }
+
+    /**
+     * Removes the view of the specified player
+     * @param name The player's name
+     */
+    public void remove(String name) {
+        views.remove(name.toLowerCase());
+    }
+
+    /**
+     * Keeps serving the current views until {@link #releaseViews()} is called, while the players are registered again
+     */
+    public void holdViews() {
+        if (held == null) {
+            held = new HashMap<String, PlayerView>(views);
+        }
+    }
+
+    /**
+     * Serves the current views again
+     */
+    public void releaseViews() {
+        held = null;
+    }
+
+}
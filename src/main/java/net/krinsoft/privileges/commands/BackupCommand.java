@@ -3,6 +3,7 @@ package net.krinsoft.privileges.commands;
 import net.krinsoft.privileges.Privileges;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.permissions.PermissionDefault;
 
 import java.io.File;
@@ -35,7 +36,11 @@ public class BackupCommand extends PrivilegesCommand {
                 if (folder.mkdirs()) { plugin.debug("Creating new directory: " + folder.getName()); }
             }
             plugin.getConfig().save(new File(folder, "config.yml"));
-            plugin.getUsers().save(new File(folder, "users.yml"));
+            YamlConfiguration users = new YamlConfiguration();
+            for (String user : plugin.getUserNames()) {
+                users.set("users." + user, plugin.getStorage().getUser(user));
+            }
+            users.save(new File(folder, "users.yml"));
             plugin.getGroups().save(new File(folder, "groups.yml"));
         } catch (Exception e) {
             plugin.warn("An error occurred while backing the config files up.");
@@ -2,6 +2,8 @@ package net.krinsoft.privileges.commands;
 
 import net.krinsoft.privileges.Privileges;
 import net.krinsoft.privileges.groups.Group;
+import net.krinsoft.privileges.groups.PermissionTable;
+import net.krinsoft.privileges.groups.RankedGroup;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
@@ -44,6 +46,11 @@ public class GroupCheckCommand extends GroupCommand {
         String world = args.size() == 2 ? ((Player) sender).getWorld().getName() : args.get(1);
         String node = args.size() == 3 ? args.get(2) : args.get(1);
         boolean val = g.hasPermission(node, world);
-        sender.sendMessage(ChatColor.GREEN + g.getName() + ChatColor.RESET + "'s node '" + ChatColor.AQUA + node + ChatColor.RESET + "' has a value of '" + ChatColor.AQUA + val + ChatColor.RESET + "' on " + ChatColor.GOLD + world + ChatColor.RESET + ".");
+        String set = "";
+        if (g instanceof RankedGroup) {
+            PermissionTable table = ((RankedGroup) g).getPermissionTable();
+            set = " (" + ChatColor.DARK_AQUA + (table.isSet(node, world) ? "set" : "default") + ChatColor.RESET + ")";
+        }
+        sender.sendMessage(ChatColor.GREEN + g.getName() + ChatColor.RESET + "'s node '" + ChatColor.AQUA + node + ChatColor.RESET + "' has a value of '" + ChatColor.AQUA + val + ChatColor.RESET + "' on " + ChatColor.GOLD + world + ChatColor.RESET + set + ".");
     }
 }
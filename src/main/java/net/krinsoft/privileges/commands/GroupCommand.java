@@ -1,6 +1,7 @@
 package net.krinsoft.privileges.commands;
 
 import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.groups.Group;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
@@ -22,4 +23,19 @@ public abstract class GroupCommand extends PrivilegesCommand {
             sender.sendMessage("When you're done editing permissions, run: " + ChatColor.GREEN + "/priv reload");
         }
     }
+
+    /**
+     * Applies an edit to a single group. With auto_reload enabled, only the group and the groups inheriting it are
+     * recompiled, instead of reloading all of Privileges.
+     * @param sender The sender who edited the group
+     * @param group The group that was edited
+     */
+    protected void reload(CommandSender sender, Group group) {
+        if (plugin.getConfig().getBoolean("auto_reload")) {
+            plugin.saveGroups();
+            plugin.getGroupManager().recompile(group.getName());
+        } else {
+            sender.sendMessage("When you're done editing permissions, run: " + ChatColor.GREEN + "/priv reload");
+        }
+    }
 }
@@ -2,6 +2,7 @@ package net.krinsoft.privileges.commands;
 
 import net.krinsoft.privileges.Privileges;
 import net.krinsoft.privileges.groups.Group;
+import net.krinsoft.privileges.groups.MemberIndex;
 import org.bukkit.command.CommandSender;
 import org.bukkit.permissions.PermissionDefault;
 
@@ -31,10 +32,11 @@ public class GroupListCommand extends GroupCommand {
     public void runCommand(CommandSender sender, List<String> args) {
         StringBuilder line = new StringBuilder();
         Set<String> groups = plugin.getGroups().getConfigurationSection("groups").getKeys(false);
+        MemberIndex members = plugin.getMemberIndex();
         for (String group : groups) {
             if (line.length() > 0) { line.append(", "); }
             Group g = plugin.getGroupManager().getGroup(group);
-            line.append(g.getName()).append(" (").append(g.getRank()).append(")");
+            line.append(g.getName()).append(" (").append(g.getRank()).append(", ").append(members.count(g.getName())).append(" users)");
         }
         sender.sendMessage(line.toString());
     }
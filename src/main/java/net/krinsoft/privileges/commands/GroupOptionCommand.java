@@ -93,7 +93,6 @@ public class GroupOptionCommand extends GroupCommand {
                 try {
                     int rank = Integer.parseInt(args.get(3));
                     group.set("rank", rank);
-                    reload(sender);
                 } catch (NumberFormatException e) {
                     sender.sendMessage(ChatColor.RED + "Rank must be a number.");
                     return;
@@ -106,6 +105,10 @@ public class GroupOptionCommand extends GroupCommand {
                     sender.sendMessage(ChatColor.RED + "That group does not exist.");
                     return;
                 }
+                if (a != Action.RM && plugin.getGroupManager().getInheritanceGraph().createsCycle(g.getName(), parent.getName())) {
+                    sender.sendMessage(ChatColor.RED + "The group " + ChatColor.GOLD + parent.getName() + ChatColor.RED + " already inherits " + ChatColor.GOLD + g.getName() + ChatColor.RED + "; that would create an inheritance cycle.");
+                    return;
+                }
                 switch (a) {
                     case ADD:
                         if (!tree.contains(parent.getName())) {
@@ -191,6 +194,6 @@ public class GroupOptionCommand extends GroupCommand {
                 break;
         }
         sender.sendMessage(message.toString());
-        reload(sender);
+        reload(sender, g);
     }
 }
@@ -59,7 +59,7 @@ public class GroupPermRemoveCommand extends GroupPermCommand {
         msg.append(".");
         sender.sendMessage(msg.toString());
         plugin.log(">> " + sender.getName() + ": " + group.getName() + "'s node '" + node + "' has been removed" + (world != null ? " on '" + world + "'" : ""));
-        reload(sender);
+        reload(sender, group);
     }
 
 }
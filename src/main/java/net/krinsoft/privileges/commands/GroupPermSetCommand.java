@@ -72,7 +72,7 @@ public class GroupPermSetCommand extends GroupPermCommand {
         msg.append(".");
         sender.sendMessage(msg.toString());
         plugin.log(">> " + sender.getName() + ": " + group.getName() + "'s node '" + node + "' is now '" + val + "'" + (world != null ? " on '" + world + "'" : ""));
-        reload(sender);
+        reload(sender, group);
     }
 
 }
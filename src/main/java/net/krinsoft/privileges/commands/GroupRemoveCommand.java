@@ -3,8 +3,10 @@ package net.krinsoft.privileges.commands;
 import java.util.List;
 import net.krinsoft.privileges.Privileges;
 import net.krinsoft.privileges.groups.Group;
+import net.krinsoft.privileges.jobs.Job;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.permissions.PermissionDefault;
 
 /**
@@ -43,24 +45,40 @@ public class GroupRemoveCommand extends GroupCommand {
             sender.sendMessage(ChatColor.RED + "That rank is too high for you.");
             return;
         }
-        for (String user : plugin.getUsers().getConfigurationSection("users").getKeys(false)) {
-            if (plugin.getUserNode(user).getString("group").equals(group.getName())) {
-                plugin.getUserNode(user).set("group", plugin.getGroupManager().getDefaultGroup().getName());
+        final String name = group.getName();
+        plugin.getJobManager().submit(new Job("group remove " + name, sender, plugin.getMemberIndex().getMembers(name)) {
+            @Override
+            protected boolean select(String user) {
+                ConfigurationSection node = plugin.getStorage().getUser(user);
+                return node != null && name.equalsIgnoreCase(node.getString("group"));
+            }
+
+            @Override
+            protected ConfigurationSection change(String user) {
+                ConfigurationSection node = plugin.getUserNode(user);
+                node.set("group", plugin.getGroupManager().getDefaultGroup().getName());
                 plugin.debug("Set " + user + "'s group to default");
+                return node;
             }
-        }
-        for (String g : plugin.getGroups().getConfigurationSection("groups").getKeys(false)) {
-            List<String> inherit = plugin.getGroupNode(g).getStringList("inheritance");
-            if (inherit.contains(group.getName())) {
-                inherit.remove(group.getName());
-                plugin.getGroupNode(g).set("inheritance", inherit);
-                plugin.debug("Removed inheritance entry for group " + g);
+
+            @Override
+            protected void finish(int changed) {
+                plugin.saveUsers();
+                for (String g : plugin.getGroups().getConfigurationSection("groups").getKeys(false)) {
+                    List<String> inherit = plugin.getGroupNode(g).getStringList("inheritance");
+                    if (inherit.contains(name)) {
+                        inherit.remove(name);
+                        plugin.getGroupNode(g).set("inheritance", inherit);
+                        plugin.debug("Removed inheritance entry for group " + g);
+                    }
+                }
+                plugin.getGroups().set("groups." + name, null);
+                plugin.getGroupManager().removeGroup(name);
+                getSender().sendMessage("The group " + colorize(ChatColor.GREEN, name) + " has been removed, and " + changed + " users were moved to the default group.");
+                reload(getSender());
+                plugin.log(">> " + getSender().getName() + ": Removed group '" + name + "'");
             }
-        }
-        plugin.getGroups().set("groups." + group.getName(), null);
-        sender.sendMessage("The group " + colorize(ChatColor.GREEN, group.getName()) + " has been removed.");
-        reload(sender);
-        plugin.log(">> " + sender.getName() + ": Removed group '" + group.getName() + "'");
+        });
     }
 
 }
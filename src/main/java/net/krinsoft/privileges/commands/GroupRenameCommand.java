@@ -1,8 +1,10 @@
 package net.krinsoft.privileges.commands;
 
 import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.jobs.Job;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.permissions.PermissionDefault;
 
 import java.util.List;
@@ -36,27 +38,40 @@ public class GroupRenameCommand extends GroupCommand {
             sender.sendMessage(ChatColor.RED + "That group's rank is too high.");
             return;
         }
-        String o = args.get(0);
-        String n = args.get(1);
-        for (String group : plugin.getGroups().getConfigurationSection("groups").getKeys(false)) {
-            List<String> inherit = plugin.getGroupNode(group).getStringList("inheritance");
-            if (inherit.contains(o)) {
-                inherit.remove(o);
-                inherit.add(n);
-                plugin.getGroupNode(group).set("inheritance", inherit);
+        final String o = args.get(0);
+        final String n = args.get(1);
+        plugin.getJobManager().submit(new Job("group rename " + o, sender, plugin.getMemberIndex().getMembers(o)) {
+            @Override
+            protected boolean select(String user) {
+                ConfigurationSection node = plugin.getStorage().getUser(user);
+                return node != null && o.equalsIgnoreCase(node.getString("group"));
             }
-        }
-        for (String user : plugin.getUsers().getConfigurationSection("users").getKeys(false)) {
-            String group = plugin.getUserNode(user).getString("group");
-            if (group.equalsIgnoreCase(o)) {
-                plugin.getUserNode(user).set("group", n);
+
+            @Override
+            protected ConfigurationSection change(String user) {
+                ConfigurationSection node = plugin.getUserNode(user);
+                node.set("group", n);
+                return node;
             }
-        }
-        if (plugin.getGroupManager().getGroup(o).equals(plugin.getGroupManager().getDefaultGroup())) {
-            plugin.getConfig().set("default_group", n);
-        }
-        sender.sendMessage("'" + colorize(ChatColor.GREEN, o) + "' has been renamed to '" + colorize(ChatColor.GREEN, n) + "'");
-        reload(sender);
-        plugin.log(">> " + sender.getName() + ": Renamed group '" + o + "' -> '" + n + "'");
+
+            @Override
+            protected void finish(int changed) {
+                for (String group : plugin.getGroups().getConfigurationSection("groups").getKeys(false)) {
+                    List<String> inherit = plugin.getGroupNode(group).getStringList("inheritance");
+                    if (inherit.contains(o)) {
+                        inherit.remove(o);
+                        inherit.add(n);
+                        plugin.getGroupNode(group).set("inheritance", inherit);
+                    }
+                }
+                plugin.saveUsers();
+                if (plugin.getGroupManager().getGroup(o).equals(plugin.getGroupManager().getDefaultGroup())) {
+                    plugin.getConfig().set("default_group", n);
+                }
+                getSender().sendMessage("'" + colorize(ChatColor.GREEN, o) + "' has been renamed to '" + colorize(ChatColor.GREEN, n) + "' (" + changed + " users moved)");
+                reload(getSender());
+                plugin.log(">> " + getSender().getName() + ": Renamed group '" + o + "' -> '" + n + "'");
+            }
+        });
     }
 }
@@ -0,0 +1,45 @@
+package net.krinsoft.privileges.commands;
+
+import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.jobs.Job;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.permissions.PermissionDefault;
+
+import java.util.List;
+
+/**
+ * @author krinsdeath
+ */
+public class JobsCommand extends PrivilegesCommand {
+
+    public JobsCommand(Privileges plugin) {
+        super(plugin);
+        setName("Privileges: Jobs");
+        setCommandUsage("/priv jobs [cancel]");
+        addCommandExample("/priv jobs -- list the running bulk jobs");
+        addCommandExample("/priv jobs cancel -- cancel your running bulk jobs");
+        setArgRange(0, 1);
+        addKey("privileges jobs");
+        addKey("priv jobs");
+        addKey("pjobs");
+        setPermission("privileges.jobs", "Lists and cancels running bulk jobs.", PermissionDefault.OP);
+    }
+
+    @Override
+    public void runCommand(CommandSender sender, List<String> args) {
+        if (args.size() > 0 && args.get(0).equalsIgnoreCase("cancel")) {
+            int cancelled = plugin.getJobManager().cancel(sender);
+            sender.sendMessage(ChatColor.GREEN + "Cancelled " + cancelled + " job(s).");
+            return;
+        }
+        List<Job> jobs = plugin.getJobManager().getJobs();
+        if (jobs.isEmpty()) {
+            sender.sendMessage(ChatColor.GREEN + "No jobs are running.");
+            return;
+        }
+        for (Job job : jobs) {
+            sender.sendMessage(ChatColor.AQUA + job.getName() + ChatColor.WHITE + " (" + job.getSender().getName() + "): " + job.getPosition() + "/" + job.getSize() + " users checked" + (job.isCancelled() ? ChatColor.RED + " [cancelled]" : ""));
+        }
+    }
+}
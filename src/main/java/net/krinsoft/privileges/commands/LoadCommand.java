@@ -16,17 +16,19 @@ public class LoadCommand extends PrivilegesCommand {
     public LoadCommand(Privileges instance) {
         super(instance);
         setName("Privileges: Load");
-        setCommandUsage("/priv load");
-        setArgRange(0, 0);
+        setCommandUsage("/priv load [--force]");
+        setArgRange(0, 1);
         addKey("privileges load");
         addKey("priv load");
         addKey("pload");
+        addCommandExample("/priv load --force");
         setPermission("privileges.load", "Immediately loads Privileges currently saved configuration, without saving any changes to disk beforehand.", PermissionDefault.OP);
     }
 
     @Override
     public void runCommand(CommandSender sender, List<String> args) {
-        plugin.reload();
+        // --force accepts users.yml and groups.yml even if they were edited by hand
+        plugin.reload(args.size() > 0 && args.get(0).equalsIgnoreCase("--force"));
         if (!(sender instanceof ConsoleCommandSender)) {
             plugin.log(">> " + sender.getName() + ": Privileges was loaded successfully.");
         }
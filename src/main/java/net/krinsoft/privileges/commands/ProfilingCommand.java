@@ -1,9 +1,9 @@
 package net.krinsoft.privileges.commands;
 
 import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.profiling.Metric;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.permissions.PermissionDefault;
 
 import java.util.List;
@@ -16,8 +16,10 @@ public class ProfilingCommand extends PrivilegesCommand {
     public ProfilingCommand(Privileges instance) {
         super(instance);
         setName("Privileges: Profiling");
-        setCommandUsage("/priv profiling");
-        setArgRange(0, 0);
+        setCommandUsage("/priv profiling [reset]");
+        addCommandExample("/priv profiling -- show the latency of each instrumented code path");
+        addCommandExample("/priv profiling reset -- start counting from zero again");
+        setArgRange(0, 1);
         addKey("privileges profiling");
         addKey("priv profiling");
         setPermission("privileges.profiling", "Shows profiling data for the various events.", PermissionDefault.OP);
@@ -25,14 +27,28 @@ public class ProfilingCommand extends PrivilegesCommand {
 
     @Override
     public void runCommand(CommandSender sender, List<String> args) {
-        ConfigurationSection events = plugin.getConfig().getConfigurationSection("profiling");
-        if (events != null) {
-            sender.sendMessage(ChatColor.GREEN + "=== " + ChatColor.AQUA + events.getKeys(false).size() + ChatColor.WHITE + " Events" + ChatColor.GREEN + " ===");
-            for (String event : events.getKeys(false)) {
-                long time = events.getLong(event);
-                sender.sendMessage("Event [" + ChatColor.GREEN + event + ChatColor.WHITE + "]: " + ChatColor.AQUA + (time / 1000000L) + ChatColor.WHITE + "ms (" + ChatColor.GRAY + time + ChatColor.WHITE + "ns)");
+        if (args.size() > 0 && args.get(0).equalsIgnoreCase("reset")) {
+            plugin.getProfiler().reset();
+            sender.sendMessage(ChatColor.GREEN + "Profiling data has been reset.");
+            return;
+        }
+        int shown = 0;
+        for (Metric metric : plugin.getProfiler().getMetrics()) {
+            Metric.Snapshot snapshot = metric.snapshot();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            if (shown++ == 0) {
+                sender.sendMessage(ChatColor.GREEN + "=== " + ChatColor.WHITE + "count, rate, p50 / p99 / max" + ChatColor.GREEN + " ===");
             }
-        } else {
+            sender.sendMessage("[" + ChatColor.GREEN + metric.getName() + ChatColor.WHITE + "]: " +
+                    ChatColor.AQUA + snapshot.getCount() + ChatColor.WHITE + ", " +
+                    ChatColor.AQUA + String.format("%.2f", snapshot.getRate()) + ChatColor.WHITE + "/s, " +
+                    ChatColor.AQUA + (snapshot.getPercentile(0.5) / 1000L) + ChatColor.WHITE + " / " +
+                    ChatColor.AQUA + (snapshot.getPercentile(0.99) / 1000L) + ChatColor.WHITE + " / " +
+                    ChatColor.AQUA + (snapshot.getMax() / 1000L) + ChatColor.WHITE + "us");
+        }
+        if (shown == 0) {
             sender.sendMessage("No profiling data available.");
         }
     }
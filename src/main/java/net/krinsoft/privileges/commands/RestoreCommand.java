@@ -3,6 +3,8 @@ package net.krinsoft.privileges.commands;
 import net.krinsoft.privileges.Privileges;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.permissions.PermissionDefault;
 
 import java.io.File;
@@ -38,10 +40,20 @@ public class RestoreCommand extends PrivilegesCommand {
             }
             plugin.getConfig().load(new File(folder, "config.yml"));
             plugin.getConfig().save(new File(plugin.getDataFolder(), "config.yml"));
-            plugin.getUsers().load(new File(folder, "users.yml"));
-            plugin.getUsers().save(new File(plugin.getDataFolder(), "users.yml"));
+            ConfigurationSection users = YamlConfiguration.loadConfiguration(new File(folder, "users.yml")).getConfigurationSection("users");
+            for (String user : plugin.getUserNames()) {
+                if (users == null || users.getConfigurationSection(user) == null) {
+                    plugin.setUserNode(user, null);
+                }
+            }
+            if (users != null) {
+                for (String user : users.getKeys(false)) {
+                    plugin.setUserNode(user, users.getConfigurationSection(user));
+                }
+            }
+            plugin.saveUsers();
             plugin.getGroups().load(new File(folder, "groups.yml"));
-            plugin.getGroups().save(new File(plugin.getDataFolder(), "groups.yml"));
+            plugin.saveGroups();
             plugin.reload();
         } catch (Exception e) {
             plugin.warn("An error occurred when trying to restore a backup for Privileges.");
@@ -32,6 +32,7 @@ public class SaveCommand extends PrivilegesCommand {
         }
         plugin.saveUsers();
         plugin.saveGroups();
+        plugin.flush();
         plugin.saveConfig();
         sender.sendMessage(ChatColor.GREEN + "All config files saved.");
         plugin.log(">> " + sender.getName() + ": All config files saved.");
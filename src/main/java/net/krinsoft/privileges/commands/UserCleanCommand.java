@@ -1,8 +1,8 @@
 package net.krinsoft.privileges.commands;
 
 import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.jobs.Job;
 import org.bukkit.ChatColor;
-import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.permissions.PermissionDefault;
@@ -29,26 +29,25 @@ public class UserCleanCommand extends UserCommand {
     @Override
     public void runCommand(CommandSender sender, List<String> args) {
         if (args.get(0).equals("--confirm")) {
-            String default_group = plugin.getConfig().getString("default_group", "default");
-            for (String key : plugin.getUsers().getConfigurationSection("users").getKeys(false)) {
-                boolean success = false;
-                ConfigurationSection node = plugin.getUserNode(key);
-                List<String> perms = node.getStringList("permissions");
-                if (node.getString("group").equals(default_group) && (perms == null || perms.size() == 0)) {
-                    for (World world : plugin.getServer().getWorlds()) {
-                        perms = node.getStringList("worlds." + world.getName());
-                        success = perms == null || perms.size() == 0;
-                    }
+            final String default_group = plugin.getConfig().getString("default_group", "default");
+            plugin.getJobManager().submit(new Job("user clean", sender, plugin.getMemberIndex().getMembers(default_group)) {
+                @Override
+                protected boolean select(String user) {
+                    ConfigurationSection node = plugin.getStorage().getUser(user);
+                    return node != null && default_group.equalsIgnoreCase(node.getString("group")) && !plugin.getMemberIndex().hasCustomNodes(user);
                 }
-                if (success) {
-                    plugin.getUsers().set("users." + key + ".group", null);
-                    plugin.getUsers().set("users." + key + ".permissions", null);
-                    plugin.getUsers().set("users." + key + ".worlds", null);
-                    plugin.getUsers().set("users." + key, null);
+
+                @Override
+                protected ConfigurationSection change(String user) {
+                    return null;
+                }
+
+                @Override
+                protected void finish(int changed) {
+                    plugin.saveUsers();
+                    getSender().sendMessage(ChatColor.GREEN + "Users cleaned: " + changed + " removed.");
                 }
-            }
-            plugin.saveUsers();
-            sender.sendMessage(ChatColor.GREEN + "Users cleaned.");
+            });
         } else {
             sender.sendMessage(ChatColor.RED + "In order to clean all users, you must supply the argument '" + ChatColor.AQUA + "--confirm" + ChatColor.RED + "'");
         }
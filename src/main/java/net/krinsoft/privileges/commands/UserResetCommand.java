@@ -4,6 +4,7 @@ import net.krinsoft.privileges.Privileges;
 import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.permissions.PermissionDefault;
 
 import java.util.List;
@@ -33,9 +34,12 @@ public class UserResetCommand extends UserPermCommand {
             return;
         }
         try {
-            plugin.getUserNode(p.getName()).set("group", plugin.getGroupManager().getDefaultGroup().getName());
-            plugin.getUserNode(p.getName()).set("permissions", null);
-            plugin.getUserNode(p.getName()).set("worlds", null);
+            ConfigurationSection user = plugin.getUserNode(p.getName());
+            user.set("group", plugin.getGroupManager().getDefaultGroup().getName());
+            user.set("permissions", null);
+            user.set("worlds", null);
+            plugin.setUserNode(p.getName(), user);
+            plugin.saveUsers();
             plugin.getPlayerManager().register(p.getName());
             sender.sendMessage(ChatColor.GREEN + "The user '" + p.getName() + "' has been reset to default.");
             plugin.log(">> " + sender.getName() + ": " + p.getName() + " has been reset.");
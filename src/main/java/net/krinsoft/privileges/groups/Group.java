@@ -39,6 +39,13 @@ public interface Group {
      */
     public String getMasterPermission(String world);
 
+    /**
+     * Builds and registers this group's master permission for the specified world, if it isn't loaded yet
+     * @param world The name of the world we're loading the permission master for
+     * @return The name of the master permission, as returned by {@link #getMasterPermission(String)}
+     */
+    public String loadMasterPermission(String world);
+
     /**
      * Adds the specified permission to the list for the specified world. If world is null, adds to the group's global permission list
      * @param world The name of the world we're attaching the node to
@@ -2,20 +2,26 @@ package net.krinsoft.privileges.groups;
 
 import net.krinsoft.privileges.Privileges;
 import net.krinsoft.privileges.event.GroupChangeEvent;
+import net.krinsoft.privileges.profiling.Metric;
 import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.command.RemoteConsoleCommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionDefault;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * A group manager that handles the creation and removal of group permissions in Privileges
@@ -25,23 +31,164 @@ public class GroupManager {
     private Privileges plugin;
     private String DEFAULT;
     private Map<String, Group> groupList = new HashMap<String, Group>();
+    // the loaded groups, by rank
+    private TreeMap<Integer, List<Group>> ranks = new TreeMap<Integer, List<Group>>();
     private Map<String, String> players = new HashMap<String, String>();
+    private volatile Map<String, PermissionTable> tables = Collections.emptyMap();
+    private PermissionCompiler compiler;
+    private InheritanceGraph inheritance;
+    // the latest published copy of the groups and players, for readers on other threads
+    private volatile PermissionSnapshot snapshot = PermissionSnapshot.EMPTY;
+    private Map<String, GroupSnapshot> group_snapshots = new HashMap<String, GroupSnapshot>();
+    // whether groups are being created in bulk, so the snapshot is only published once they're all loaded
+    private boolean loading;
+    // the time spent compiling every group, and recompiling a single group and its children
+    private final Metric compile_time;
+    private final Metric recompile_time;
 
     public GroupManager(Privileges plugin) {
         this.plugin = plugin;
         this.DEFAULT = plugin.getConfig().getString("default_group", "default").toLowerCase();
+        this.compiler = new PermissionCompiler(plugin);
+        this.compile_time = plugin.getProfiler().get("groups.compile");
+        this.recompile_time = plugin.getProfiler().get("groups.recompile");
     }
 
     public void clean() {
         groupList.clear();
+        ranks.clear();
         players.clear();
+        tables = Collections.emptyMap();
+        compiler.clear();
+        inheritance = null;
+        group_snapshots = new HashMap<String, GroupSnapshot>();
+        snapshot = PermissionSnapshot.EMPTY;
     }
 
     public void reload() {
         Set<String> groups = plugin.getGroups().getConfigurationSection("groups").getKeys(false);
+        compile(groups);
+        loading = true;
+        try {
+            for (String group : groups) {
+                Group g = getGroup(group);
+            }
+        } finally {
+            loading = false;
+        }
+        publishGroups();
+    }
+
+    /**
+     * Gets the latest published snapshot of the groups and the registered players' groups.<br>
+     * Unlike the rest of the group manager, this is safe to call from any thread. While this manager is still loading
+     * after a reload, the snapshot is incomplete; other plugins should use {@link Privileges#getSnapshot()}.
+     * @return The snapshot
+     */
+    public PermissionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Copies every loaded group and publishes a new snapshot
+     */
+    private void publishGroups() {
+        if (loading) { return; }
+        Map<String, GroupSnapshot> copies = new HashMap<String, GroupSnapshot>();
+        for (Map.Entry<String, Group> entry : groupList.entrySet()) {
+            Group g = entry.getValue();
+            PermissionTable table = g instanceof RankedGroup ? ((RankedGroup) g).getPermissionTable() : tables.get(entry.getKey());
+            copies.put(entry.getKey(), new GroupSnapshot(g, table));
+        }
+        group_snapshots = copies;
+        publishPlayers();
+    }
+
+    /**
+     * Publishes a new snapshot with the current players' groups, reusing the copies of the groups
+     */
+    private void publishPlayers() {
+        if (loading) { return; }
+        Map<String, String> members = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : players.entrySet()) {
+            members.put(entry.getKey().toLowerCase(), entry.getValue().toLowerCase());
+        }
+        snapshot = new PermissionSnapshot(group_snapshots, members);
+    }
+
+    /**
+     * Compiles the permission tables for the specified groups, and swaps them in all at once
+     * @param groups The names of the groups to compile
+     */
+    private void compile(Set<String> groups) {
+        long time = System.nanoTime();
+        Map<String, PermissionTable> compiled = new HashMap<String, PermissionTable>();
         for (String group : groups) {
-            Group g = getGroup(group);
+            compiled.put(group.toLowerCase(), compiler.compile(group, getInheritanceGraph().getTree(group)));
         }
+        tables = Collections.unmodifiableMap(compiled);
+        compile_time.since(time);
+        plugin.debug("Compiled permission tables for " + compiled.size() + " groups.");
+    }
+
+    /**
+     * Recompiles the specified group and every group which inherits it, without a full reload. The master permissions of
+     * the affected groups are updated in place, so only the players in those groups have their permissions recalculated.
+     * @param group The name of the group whose nodes, inheritance or options changed
+     */
+    public void recompile(String group) {
+        long time = System.nanoTime();
+        compiler.invalidate(group);
+        Set<String> affected = getInheritanceGraph().update(group);
+        Map<String, PermissionTable> compiled = new HashMap<String, PermissionTable>(tables);
+        for (String name : affected) {
+            compiled.put(name.toLowerCase(), compiler.compile(name, getInheritanceGraph().getTree(name)));
+        }
+        tables = Collections.unmodifiableMap(compiled);
+        for (String name : affected) {
+            Group g = groupList.get(name.toLowerCase());
+            if (g instanceof RankedGroup) {
+                int rank = g.getRank();
+                ((RankedGroup) g).refresh(getInheritanceGraph().getTree(name), compiled.get(name.toLowerCase()));
+                if (g.getRank() != rank) {
+                    unindex(g, rank);
+                    index(g);
+                }
+            }
+        }
+        publishGroups();
+        plugin.getPlayerManager().refreshPermissionCaches();
+        time = System.nanoTime() - time;
+        recompile_time.record(time);
+        plugin.debug("Recompiled " + affected.size() + " group(s) for '" + group + "' in " + (time / 1000L) + "us.");
+    }
+
+    /**
+     * Gets the inheritance graph of the groups in groups.yml, building it if necessary
+     * @return The inheritance graph
+     */
+    public InheritanceGraph getInheritanceGraph() {
+        if (inheritance == null) {
+            inheritance = new InheritanceGraph(plugin);
+        }
+        return inheritance;
+    }
+
+    /**
+     * Gets the compiled permission table for the specified group, compiling it if the group is new since the last reload
+     * @param group The name of the group
+     * @param tree The group's inheritance tree
+     * @return The group's permission table
+     */
+    private PermissionTable getPermissionTable(String group, List<String> tree) {
+        PermissionTable table = tables.get(group.toLowerCase());
+        if (table == null) {
+            table = compiler.compile(group, tree);
+            Map<String, PermissionTable> compiled = new HashMap<String, PermissionTable>(tables);
+            compiled.put(group.toLowerCase(), table);
+            tables = Collections.unmodifiableMap(compiled);
+        }
+        return table;
     }
 
     public Group getDefaultGroup() {
@@ -90,12 +237,50 @@ public class GroupManager {
      * @return true if the rank is taken, otherwise false
      */
     public boolean isRankTaken(int rank) {
-        for (Group g : groupList.values()) {
-            if (g.getRank() == rank) {
-                return true;
+        return ranks.containsKey(rank);
+    }
+
+    /**
+     * Gets the lowest ranked group above the specified rank
+     * @param rank The rank to start from
+     * @return The next higher ranked group, or null if there's none
+     */
+    public Group getNextGroup(int rank) {
+        Map.Entry<Integer, List<Group>> entry = ranks.higherEntry(rank);
+        return entry != null ? entry.getValue().get(0) : null;
+    }
+
+    /**
+     * Gets the highest ranked group below the specified rank
+     * @param rank The rank to start from
+     * @return The next lower ranked group, or null if there's none
+     */
+    public Group getPreviousGroup(int rank) {
+        Map.Entry<Integer, List<Group>> entry = ranks.lowerEntry(rank);
+        return entry != null ? entry.getValue().get(0) : null;
+    }
+
+    private void index(Group group) {
+        List<Group> groups = ranks.get(group.getRank());
+        if (groups == null) {
+            groups = new ArrayList<Group>(1);
+            ranks.put(group.getRank(), groups);
+        }
+        groups.add(group);
+    }
+
+    private void unindex(Group group, int rank) {
+        List<Group> groups = ranks.get(rank);
+        if (groups == null) { return; }
+        Iterator<Group> iterator = groups.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == group) {
+                iterator.remove();
             }
         }
-        return false;
+        if (groups.isEmpty()) {
+            ranks.remove(rank);
+        }
     }
 
     /**
@@ -123,18 +308,7 @@ public class GroupManager {
                 return;
             }
         }
-        int diff = Integer.MAX_VALUE;
-        Group group = null;
-        for (Group g : groupList.values()) {
-            plugin.debug("Checking viability of " + g.getName() + "...");
-            // check the iteration's rank - player's current rank
-            // if greater than 0 and less than current difference, we have a promotion possibility
-            if (g.getRank() - rank > 0 && g.getRank() - rank < diff) {
-                plugin.debug("Promotion viability determined for player " + player.getName() + " to group " + g.getName() + "!");
-                diff = g.getRank() - rank;
-                group = g;
-            }
-        }
+        Group group = getNextGroup(rank);
         // check that we have a possible rank, and make sure the new player's rank is less than the sender's rank
         if (group != null && (group.getRank() < send || sender.hasPermission("privileges.self.edit"))) {
             sender.sendMessage("You have promoted " + ChatColor.GREEN + player.getName() + ChatColor.WHITE + " to the group " + ChatColor.AQUA + group.getName() + ChatColor.WHITE + ".");
@@ -184,18 +358,7 @@ public class GroupManager {
                 return;
             }
         }
-        int diff = Integer.MAX_VALUE;
-        Group group = null;
-        for (Group g : groupList.values()) {
-            plugin.debug("Checking viability of " + g.getName() + "...");
-            // check the player's current rank - the current iteration's rank
-            // if greater than 0 and less than current difference, we have a demotion possibility
-            if (rank - g.getRank() > 0 && rank - g.getRank() < diff) {
-                plugin.debug("Demotion viability determined for player " + player.getName() + " to group " + g.getName() + "!");
-                diff = rank - g.getRank();
-                group = g;
-            }
-        }
+        Group group = getPreviousGroup(rank);
         // check that we have a possible rank, and make sure the new player's rank is less than the sender's rank
         if (group != null && (group.getRank() < send || sender.hasPermission("privileges.self.edit"))) {
             sender.sendMessage("You have demoted " + ChatColor.RED + player.getName() + ChatColor.WHITE + " to the group " + ChatColor.DARK_RED + group.getName() + ChatColor.WHITE + ".");
@@ -230,9 +393,20 @@ public class GroupManager {
         plugin.debug("Adding player " + player + " to group " + group + "...");
         Group g = createGroup(group);
         players.put(player, g.getName());
+        publishPlayers();
         return g;
     }
 
+    /**
+     * Forgets the specified player's group, so it's read from their stored record again
+     * @param player The player to remove
+     */
+    public void removePlayer(String player) {
+        if (players.remove(player) != null) {
+            publishPlayers();
+        }
+    }
+
     /**
      * Attempts to get the rank of a player
      * @param player The player whose rank is being fetched
@@ -291,18 +465,18 @@ public class GroupManager {
         if (test == null) { return null; }
 
         // update the player's group in the configuration
-        plugin.getUsers().set("users." + player.toLowerCase() + ".group", test.getName());
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-            public void run() {
-                plugin.saveUsers();
-            }
-        });
+        ConfigurationSection user = plugin.getUserNode(player);
+        user.set("group", test.getName());
+        plugin.setUserNode(player, user);
+        plugin.saveUsers();
 
-        // update the player's values
-        players.put(player, test.getName());
+        // update the player's values, if they're online
+        if (ply.isOnline()) {
+            players.put(player, test.getName());
+            publishPlayers();
+        }
 
         // reload the permissions
-        plugin.getPlayerManager().unregister(player);
         plugin.getPlayerManager().register(player);
 
         // tell other plugins about the group change
@@ -370,20 +544,34 @@ public class GroupManager {
                 plugin.debug("Group node for '" + group + "' was null.");
                 return getDefaultGroup();
             }
-            List<String> tree = plugin.getPlayerManager().calculateGroupTree(group);
+            List<String> tree = getInheritanceGraph().getTree(group);
             Permission perm = new Permission("group." + group);
             perm.setDescription("If true, the attached player is a member of the group: " + group);
             perm.setDefault(PermissionDefault.FALSE);
             if (plugin.getServer().getPluginManager().getPermission(perm.getName()) == null) {
                 plugin.getServer().getPluginManager().addPermission(perm);
             }
-            Group nGroup = new RankedGroup(plugin, group, plugin.getGroupNode(group).getInt("rank", 1), tree);
+            Group nGroup = new RankedGroup(plugin, group, plugin.getGroupNode(group).getInt("rank", 1), tree, getPermissionTable(group, tree));
             nGroup.addPermission(null, perm.getName());
             groupList.put(group.toLowerCase(), nGroup);
+            index(nGroup);
+            publishGroups();
             return nGroup;
         }
     }
 
+    /**
+     * Forgets the specified group after it was removed from groups.yml
+     * @param group The name of the removed group
+     */
+    public void removeGroup(String group) {
+        Group g = groupList.remove(group.toLowerCase());
+        if (g != null) {
+            unindex(g, g.getRank());
+            publishGroups();
+        }
+    }
+
     /**
      * Returns a set of groups of which the plugin is currently aware
      * @return The current groups, as a Set
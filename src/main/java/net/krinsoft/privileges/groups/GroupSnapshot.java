@@ -0,0 +1,111 @@
+package net.krinsoft.privileges.groups;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable copy of a single group as it was when a {@link PermissionSnapshot} was published
+ * @author krinsdeath
+ */
+public final class GroupSnapshot {
+    private final String name;
+    private final int rank;
+    // the group's inheritance tree, starting at the base inherited group
+    private final List<String> tree;
+    private final PermissionTable table;
+    private final String promotion;
+    private final String demotion;
+
+    GroupSnapshot(Group group, PermissionTable table) {
+        this.name = group.getName();
+        this.rank = group.getRank();
+        this.tree = Collections.unmodifiableList(new ArrayList<String>(group.getGroupTree()));
+        this.table = table;
+        this.promotion = group.getPromotion();
+        this.demotion = group.getDemotion();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * Gets this group's inheritance tree, starting at the base inherited group and ending with the group itself
+     * @return An unmodifiable list of group names
+     */
+    public List<String> getTree() {
+        return tree;
+    }
+
+    /**
+     * Gets this group's resolved nodes on the specified world
+     * @param world The name of the world, or null for the global nodes
+     * @return An unmodifiable map of node names to their values
+     */
+    public Map<String, Boolean> getNodes(String world) {
+        return table.getNodes(world);
+    }
+
+    /**
+     * Gets the names of the worlds which have their own resolved nodes
+     * @return An unmodifiable set of world names
+     */
+    public Set<String> getWorlds() {
+        return table.getWorlds();
+    }
+
+    public String getPromotion() {
+        return promotion;
+    }
+
+    public String getDemotion() {
+        return demotion;
+    }
+
+    /**
+     * Checks whether this group's inheritance tree contains the specified group
+     * @param group The name of the group
+     * @return true if this group is or inherits the group, otherwise false
+     */
+    public boolean isMemberOf(String group) {
+        for (String g : tree) {
+            if (g.equalsIgnoreCase(group)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the value of the specified node on the given world
+     * @param node The permission node
+     * @param world The name of the world, or null for the global nodes
+     * @return The node's value, or false if it isn't set
+     */
+    public boolean getValue(String node, String world) {
+        return table.getValue(node, world);
+    }
+
+    /**
+     * Checks whether the specified node is explicitly set on the given world
+     * @param node The permission node
+     * @param world The name of the world, or null for the global nodes
+     * @return true if the node is set, otherwise false
+     */
+    public boolean isSet(String node, String world) {
+        return table.isSet(node, world);
+    }
+
+    @Override
+    public String toString() {
+        return "GroupSnapshot{name=" + name + ",rank=" + rank + ",tree=" + tree + "}";
+    }
+
+}
@@ -0,0 +1,236 @@
+package net.krinsoft.privileges.groups;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The inheritance graph of every group in groups.yml, built once per reload.<br>
+ * Each group's tree is linearized once and cached, and inheritance cycles are rejected when the graph is built.
+ * @author krinsdeath
+ */
+public class InheritanceGraph {
+    private final Privileges plugin;
+    // the name of each group as it appears in groups.yml, by lower case name
+    private final Map<String, String> names = new HashMap<String, String>();
+    // the inherited groups of each group, by lower case name
+    private final Map<String, List<String>> parents = new LinkedHashMap<String, List<String>>();
+    // the linearized ancestors of each group, nearest first, by lower case name
+    private final Map<String, List<String>> orders = new HashMap<String, List<String>>();
+    // the linearized inheritance trees, base group first, by lower case name
+    private final Map<String, List<String>> trees = new HashMap<String, List<String>>();
+
+    public InheritanceGraph(Privileges plugin) {
+        this.plugin = plugin;
+        ConfigurationSection groups = plugin.getGroups().getConfigurationSection("groups");
+        if (groups != null) {
+            for (String group : groups.getKeys(false)) {
+                names.put(group.toLowerCase(), group);
+            }
+            for (String group : groups.getKeys(false)) {
+                List<String> inheritance = new ArrayList<String>();
+                for (String parent : groups.getStringList(group + ".inheritance")) {
+                    if (parent == null || parent.equalsIgnoreCase(group)) { continue; }
+                    inheritance.add(getName(parent));
+                }
+                parents.put(group.toLowerCase(), inheritance);
+            }
+        }
+        rejectCycles();
+    }
+
+    /**
+     * Gets the inheritance tree of the specified group, starting at the base inherited group and ending with the group itself.<br>
+     * Each group in the tree overrides any nodes from the previous group, and every group appears in it only once.
+     * @param group The name of the group whose tree we're fetching
+     * @return An unmodifiable list of group names
+     */
+    public List<String> getTree(String group) {
+        List<String> tree = trees.get(group.toLowerCase());
+        if (tree == null) {
+            List<String> order = new ArrayList<String>(linearize(group));
+            Collections.reverse(order);
+            tree = Collections.unmodifiableList(order);
+            trees.put(group.toLowerCase(), tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Gets the groups the specified group directly inherits
+     * @param group The name of the group
+     * @return An unmodifiable list of group names
+     */
+    public List<String> getParents(String group) {
+        List<String> inheritance = parents.get(group.toLowerCase());
+        if (inheritance == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(inheritance);
+    }
+
+    /**
+     * Checks whether having the specified group inherit the given parent would create an inheritance cycle
+     * @param group The name of the group that would inherit the parent
+     * @param parent The name of the parent group
+     * @return true if the parent is the group itself, or already inherits from it
+     */
+    public boolean createsCycle(String group, String parent) {
+        for (String g : getTree(parent)) {
+            if (g.equalsIgnoreCase(group)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets every group which inherits the specified group, directly or through other groups
+     * @param group The name of the group
+     * @return The names of the descendant groups
+     */
+    public Set<String> getDescendants(String group) {
+        Map<String, List<String>> children = new HashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> entry : parents.entrySet()) {
+            for (String parent : entry.getValue()) {
+                List<String> list = children.get(parent.toLowerCase());
+                if (list == null) {
+                    list = new ArrayList<String>();
+                    children.put(parent.toLowerCase(), list);
+                }
+                list.add(entry.getKey());
+            }
+        }
+        Set<String> descendants = new LinkedHashSet<String>();
+        List<String> queue = new ArrayList<String>();
+        queue.add(group.toLowerCase());
+        while (!queue.isEmpty()) {
+            List<String> list = children.get(queue.remove(0));
+            if (list == null) { continue; }
+            for (String child : list) {
+                if (descendants.add(getName(child))) {
+                    queue.add(child);
+                }
+            }
+        }
+        return descendants;
+    }
+
+    /**
+     * Re-reads the inheritance list of the specified group from groups.yml, and discards the cached trees of the group and
+     * every group which inherits it
+     * @param group The name of the group whose inheritance may have changed
+     * @return The names of the group and all of its descendants, whose trees have to be recompiled
+     */
+    public Set<String> update(String group) {
+        ConfigurationSection node = plugin.getGroupNode(group);
+        if (!names.containsKey(group.toLowerCase())) {
+            names.put(group.toLowerCase(), group);
+        }
+        List<String> inheritance = new ArrayList<String>();
+        parents.put(group.toLowerCase(), inheritance);
+        if (node != null) {
+            for (String parent : node.getStringList("inheritance")) {
+                if (parent == null || parent.equalsIgnoreCase(group)) { continue; }
+                if (createsCycle(group, parent)) {
+                    plugin.warn("Inheritance cycle detected in groups.yml: '" + parent + "' already inherits '" + getName(group) + "'. The inheritance of '" + parent + "' by '" + getName(group) + "' will be ignored.");
+                    continue;
+                }
+                inheritance.add(getName(parent));
+            }
+        }
+        // trees built while checking for cycles may have used the partial inheritance list
+        return clear(group);
+    }
+
+    /**
+     * Discards the cached trees of the specified group and every group which inherits it
+     * @param group The name of the group
+     * @return The names of the group and all of its descendants
+     */
+    private Set<String> clear(String group) {
+        Set<String> affected = new LinkedHashSet<String>();
+        affected.add(getName(group));
+        affected.addAll(getDescendants(group));
+        for (String g : affected) {
+            orders.remove(g.toLowerCase());
+            trees.remove(g.toLowerCase());
+        }
+        return affected;
+    }
+
+    /**
+     * Calculates the groups in the specified group's tree, with the group itself first, followed by each inherited group's
+     * own tree in order. A group which is inherited more than once keeps only its first position.
+     * @param group The name of the group
+     * @return The group's ancestors, nearest first
+     */
+    private List<String> linearize(String group) {
+        List<String> order = orders.get(group.toLowerCase());
+        if (order != null) {
+            return order;
+        }
+        Set<String> seen = new HashSet<String>();
+        order = new ArrayList<String>();
+        order.add(getName(group));
+        seen.add(group.toLowerCase());
+        for (String parent : getParents(group)) {
+            for (String ancestor : linearize(parent)) {
+                if (seen.add(ancestor.toLowerCase())) {
+                    order.add(ancestor);
+                }
+            }
+        }
+        orders.put(group.toLowerCase(), order);
+        return order;
+    }
+
+    /**
+     * Walks the graph in groups.yml order and removes every inheritance entry which would close a cycle
+     */
+    private void rejectCycles() {
+        Set<String> done = new HashSet<String>();
+        for (String group : new ArrayList<String>(parents.keySet())) {
+            visit(group, new ArrayList<String>(), done);
+        }
+    }
+
+    private void visit(String group, List<String> path, Set<String> done) {
+        if (done.contains(group)) { return; }
+        path.add(group);
+        List<String> inheritance = parents.get(group);
+        if (inheritance != null) {
+            for (String parent : new ArrayList<String>(inheritance)) {
+                int index = path.indexOf(parent.toLowerCase());
+                if (index >= 0) {
+                    StringBuilder cycle = new StringBuilder();
+                    for (String g : path.subList(index, path.size())) {
+                        cycle.append(getName(g)).append(" -> ");
+                    }
+                    cycle.append(parent);
+                    plugin.warn("Inheritance cycle detected in groups.yml: " + cycle + ". The inheritance of '" + parent + "' by '" + getName(group) + "' will be ignored.");
+                    inheritance.remove(parent);
+                    continue;
+                }
+                visit(parent.toLowerCase(), path, done);
+            }
+        }
+        path.remove(path.size() - 1);
+        done.add(group);
+    }
+
+    private String getName(String group) {
+        String name = names.get(group.toLowerCase());
+        return name != null ? name : group;
+    }
+
+}
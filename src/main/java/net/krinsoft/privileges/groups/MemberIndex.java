@@ -0,0 +1,222 @@
+package net.krinsoft.privileges.groups;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index of the stored users by group, kept up to date as user nodes are stored.<br>
+ * It also tracks which users have custom permission nodes, and when each user was last seen, so commands which only care
+ * about the members of one group, about users without any nodes of their own, or about users who haven't played for a
+ * while, don't have to read every stored user.<br>
+ * The storage fills the index when it's loaded, which may finish on another thread; users which are stored in the
+ * meantime keep their newer entry.
+ * @author krinsdeath
+ */
+public class MemberIndex {
+    // each user's group, in lower case, by user name
+    private final Map<String, String> groups = new HashMap<String, String>();
+    // the users in each group, by lower case group name
+    private final Map<String, Set<String>> members = new HashMap<String, Set<String>>();
+    // the users with permission nodes of their own
+    private final Set<String> custom = new HashSet<String>();
+    // the time each user was last seen, by user name
+    private final Map<String, Long> seen = new HashMap<String, Long>();
+    // the users by the time they were last seen; users who haven't been seen since this was tracked are at 0
+    private final TreeMap<Long, Set<String>> last_seen = new TreeMap<Long, Set<String>>();
+    // the users which were stored while the index was being filled, or null once it's filled
+    private Set<String> stored = new HashSet<String>();
+
+    /**
+     * Updates the specified user's entry from their stored node
+     * @param user The user's name, exactly as it's stored
+     * @param node The user's node, or null if the user was removed
+     */
+    public synchronized void update(String user, ConfigurationSection node) {
+        if (stored != null) {
+            stored.add(user);
+        }
+        remove(user);
+        if (node != null) {
+            put(user, node.getString("group"), hasCustomNodes(node), node.getLong("last_seen", 0));
+        }
+    }
+
+    /**
+     * Adds the specified user's entry while the storage fills the index, unless the user was stored since
+     * @param user The user's name, exactly as it's stored
+     * @param node The user's stored node
+     */
+    public synchronized void load(String user, ConfigurationSection node) {
+        load(user, node.getString("group"), hasCustomNodes(node), node.getLong("last_seen", 0));
+    }
+
+    /**
+     * Adds the specified user's entry while the storage fills the index, unless the user was stored since
+     * @param user The user's name, exactly as it's stored
+     * @param group The user's group, or null if they don't have one
+     * @param custom Whether the user has permission nodes of their own
+     * @param seen The time the user was last seen, or 0 if it isn't known
+     */
+    public synchronized void load(String user, String group, boolean custom, long seen) {
+        if (stored == null || stored.contains(user)) { return; }
+        remove(user);
+        put(user, group, custom, seen);
+    }
+
+    /**
+     * Marks the index as filled, once the storage added every stored user
+     */
+    public synchronized void finishLoading() {
+        stored = null;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the storage filled the index
+     */
+    public synchronized void awaitLoaded() {
+        boolean interrupted = false;
+        while (stored != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void remove(String user) {
+        String old = groups.remove(user);
+        if (old != null) {
+            Set<String> users = members.get(old);
+            users.remove(user);
+            if (users.isEmpty()) {
+                members.remove(old);
+            }
+        }
+        custom.remove(user);
+        Long time = seen.remove(user);
+        if (time != null) {
+            Set<String> users = last_seen.get(time);
+            users.remove(user);
+            if (users.isEmpty()) {
+                last_seen.remove(time);
+            }
+        }
+    }
+
+    private void put(String user, String group, boolean custom, long time) {
+        if (group != null) {
+            group = group.toLowerCase();
+            groups.put(user, group);
+            Set<String> users = members.get(group);
+            if (users == null) {
+                users = new HashSet<String>();
+                members.put(group, users);
+            }
+            users.add(user);
+        }
+        if (custom) {
+            this.custom.add(user);
+        }
+        seen.put(user, time);
+        Set<String> users = last_seen.get(time);
+        if (users == null) {
+            users = new HashSet<String>();
+            last_seen.put(time, users);
+        }
+        users.add(user);
+    }
+
+    /**
+     * Gets the stored users in the specified group
+     * @param group The group's name (case-insensitive)
+     * @return A copy of the set of user names
+     */
+    public synchronized Set<String> getMembers(String group) {
+        Set<String> users = members.get(group.toLowerCase());
+        return users != null ? new HashSet<String>(users) : new HashSet<String>();
+    }
+
+    /**
+     * Counts the stored users in the specified group
+     * @param group The group's name (case-insensitive)
+     * @return The number of users in the group
+     */
+    public synchronized int count(String group) {
+        Set<String> users = members.get(group.toLowerCase());
+        return users != null ? users.size() : 0;
+    }
+
+    /**
+     * Gets the specified user's group
+     * @param user The user's name, exactly as it's stored
+     * @return The user's group in lower case, or null if the user isn't stored
+     */
+    public synchronized String getGroup(String user) {
+        return groups.get(user);
+    }
+
+    /**
+     * Checks whether the specified user has permission nodes of their own
+     * @param user The user's name, exactly as it's stored
+     * @return true if the user has custom nodes, otherwise false
+     */
+    public synchronized boolean hasCustomNodes(String user) {
+        return custom.contains(user);
+    }
+
+    /**
+     * Gets the stored users with permission nodes of their own
+     * @return A copy of the set of user names
+     */
+    public synchronized Set<String> getCustomUsers() {
+        return new HashSet<String>(custom);
+    }
+
+    /**
+     * Gets the stored users who were last seen before the specified time, including users who haven't been seen since
+     * Privileges started tracking it
+     * @param time The time, in milliseconds since the epoch
+     * @return The set of user names
+     */
+    public synchronized Set<String> getUnseenSince(long time) {
+        Set<String> users = new HashSet<String>();
+        for (Set<String> names : last_seen.headMap(time).values()) {
+            users.addAll(names);
+        }
+        return users;
+    }
+
+    /**
+     * Checks whether the specified user node has permission nodes of its own
+     * @param node The user's node
+     * @return true if the node has custom nodes, otherwise false
+     */
+    public static boolean hasCustomNodes(ConfigurationSection node) {
+        List<String> permissions = node.getStringList("permissions");
+        if (permissions != null && !permissions.isEmpty()) {
+            return true;
+        }
+        ConfigurationSection worlds = node.getConfigurationSection("worlds");
+        if (worlds != null) {
+            for (String world : worlds.getKeys(false)) {
+                List<String> nodes = worlds.getStringList(world);
+                if (nodes != null && !nodes.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
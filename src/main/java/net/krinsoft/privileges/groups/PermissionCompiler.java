@@ -0,0 +1,142 @@
+package net.krinsoft.privileges.groups;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the permission nodes in groups.yml into immutable per-world resolution tables.<br>
+ * Every group's node lists are parsed once and reused by each group that inherits them.
+ * @author krinsdeath
+ */
+public class PermissionCompiler {
+    private final Privileges plugin;
+    private final Map<String, GroupNodes> parsed = new HashMap<String, GroupNodes>();
+
+    public PermissionCompiler(Privileges plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Compiles the permission table for the specified group
+     * @param group The name of the group being compiled
+     * @param tree The group's inheritance tree, starting at the base inherited group and ending with the group itself
+     * @return The compiled permission table
+     */
+    public PermissionTable compile(String group, List<String> tree) {
+        Map<String, Boolean> global = new LinkedHashMap<String, Boolean>();
+        Set<String> worldNames = new LinkedHashSet<String>();
+        List<Rule> rules = new ArrayList<Rule>();
+        for (String g : tree) {
+            GroupNodes nodes = getNodes(g);
+            global.putAll(nodes.global);
+            worldNames.addAll(nodes.worlds.keySet());
+            rules.addAll(nodes.rules);
+        }
+        Map<String, Map<String, Boolean>> worlds = new HashMap<String, Map<String, Boolean>>();
+        for (String world : worldNames) {
+            // each group in the tree overrides any nodes from the previous group, and its world nodes override its global nodes
+            Map<String, Boolean> children = new LinkedHashMap<String, Boolean>();
+            for (String g : tree) {
+                GroupNodes nodes = getNodes(g);
+                children.putAll(nodes.global);
+                Map<String, Boolean> world_nodes = nodes.worlds.get(world);
+                if (world_nodes != null) {
+                    children.putAll(world_nodes);
+                }
+            }
+            addMembership(group, children);
+            worlds.put(world, Collections.unmodifiableMap(children));
+        }
+        addMembership(group, global);
+        return new PermissionTable(group, global, worlds, rules.isEmpty() ? RuleIndex.EMPTY : new RuleIndex(rules));
+    }
+
+    /**
+     * Discards the parsed nodes for the specified group, so they're read from groups.yml on the next compile
+     * @param group The name of the group
+     */
+    public void invalidate(String group) {
+        parsed.remove(group.toLowerCase());
+    }
+
+    /**
+     * Discards all of the parsed group nodes
+     */
+    public void clear() {
+        parsed.clear();
+    }
+
+    private void addMembership(String group, Map<String, Boolean> children) {
+        if (!children.containsKey("group." + group)) {
+            children.put("group." + group, true);
+        }
+    }
+
+    private GroupNodes getNodes(String group) {
+        GroupNodes nodes = parsed.get(group.toLowerCase());
+        if (nodes == null) {
+            nodes = new GroupNodes(group, plugin.getGroupNode(group));
+            for (String error : nodes.errors) {
+                plugin.warn(error);
+            }
+            parsed.put(group.toLowerCase(), nodes);
+        }
+        return nodes;
+    }
+
+    /**
+     * The parsed global and world node lists and rules of a single group in groups.yml
+     */
+    private static class GroupNodes {
+        private final Map<String, Boolean> global = new LinkedHashMap<String, Boolean>();
+        private final Map<String, Map<String, Boolean>> worlds = new HashMap<String, Map<String, Boolean>>();
+        private final List<Rule> rules = new ArrayList<Rule>();
+        // the problems found while parsing the group's rules
+        private final List<String> errors = new ArrayList<String>();
+
+        private GroupNodes(String name, ConfigurationSection group) {
+            if (group == null) { return; }
+            ConfigurationSection rule_section = group.getConfigurationSection("rules");
+            if (rule_section != null) {
+                for (String rule : rule_section.getKeys(false)) {
+                    ConfigurationSection section = rule_section.getConfigurationSection(rule);
+                    Rule r = section != null ? Rule.parse(name, rule, section, errors) : null;
+                    if (r != null) {
+                        rules.add(r);
+                    }
+                }
+            }
+            parse(group.getStringList("permissions"), global);
+            ConfigurationSection section = group.getConfigurationSection("worlds");
+            if (section != null) {
+                for (String world : section.getKeys(false)) {
+                    Map<String, Boolean> nodes = new LinkedHashMap<String, Boolean>();
+                    parse(section.getStringList(world), nodes);
+                    if (nodes.size() > 0) {
+                        worlds.put(world, nodes);
+                    }
+                }
+            }
+        }
+
+        private static void parse(List<String> list, Map<String, Boolean> nodes) {
+            for (String node : list) {
+                if (node.startsWith("-")) {
+                    nodes.put(node.substring(1), false);
+                } else {
+                    nodes.put(node, true);
+                }
+            }
+        }
+    }
+
+}
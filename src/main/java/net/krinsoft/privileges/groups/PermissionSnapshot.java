@@ -0,0 +1,87 @@
+package net.krinsoft.privileges.groups;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of every loaded group and the groups of the registered players.<br>
+ * The group manager publishes a new snapshot on the main thread whenever a group or a player's group changes, so any
+ * thread can query the latest snapshot without locking, and a single snapshot never changes while it's being read.
+ * @author krinsdeath
+ */
+public final class PermissionSnapshot {
+    static final PermissionSnapshot EMPTY = new PermissionSnapshot(new HashMap<String, GroupSnapshot>(), new HashMap<String, String>());
+
+    // the groups, by lower case name
+    private final Map<String, GroupSnapshot> groups;
+    // the lower case name of each registered player's group, by lower case player name
+    private final Map<String, String> players;
+
+    PermissionSnapshot(Map<String, GroupSnapshot> groups, Map<String, String> players) {
+        this.groups = Collections.unmodifiableMap(groups);
+        this.players = Collections.unmodifiableMap(players);
+    }
+
+    /**
+     * Gets the specified group
+     * @param group The group's name (case-insensitive)
+     * @return The group, or null if it isn't loaded
+     */
+    public GroupSnapshot getGroup(String group) {
+        return groups.get(group.toLowerCase());
+    }
+
+    /**
+     * Gets every loaded group
+     * @return An unmodifiable collection of groups
+     */
+    public Collection<GroupSnapshot> getGroups() {
+        return groups.values();
+    }
+
+    /**
+     * Gets the group of the specified registered player
+     * @param player The player's name (case-insensitive)
+     * @return The player's group, or null if the player isn't online
+     */
+    public GroupSnapshot getPlayerGroup(String player) {
+        String group = players.get(player.toLowerCase());
+        return group != null ? groups.get(group) : null;
+    }
+
+    /**
+     * Gets the rank of the specified registered player
+     * @param player The player's name (case-insensitive)
+     * @return The rank of the player's group, or 0 if the player isn't online
+     */
+    public int getRank(String player) {
+        GroupSnapshot group = getPlayerGroup(player);
+        return group != null ? group.getRank() : 0;
+    }
+
+    /**
+     * Gets the inheritance tree of the specified group
+     * @param group The group's name (case-insensitive)
+     * @return An unmodifiable list of group names starting at the base inherited group, or null if the group isn't loaded
+     */
+    public List<String> getTree(String group) {
+        GroupSnapshot g = getGroup(group);
+        return g != null ? g.getTree() : null;
+    }
+
+    /**
+     * Gets the value of the specified node for a group on the given world
+     * @param group The group's name (case-insensitive)
+     * @param node The permission node
+     * @param world The name of the world, or null for the global nodes
+     * @return The node's value, or false if it isn't set or the group isn't loaded
+     */
+    public boolean getValue(String group, String node, String world) {
+        GroupSnapshot g = getGroup(group);
+        return g != null && g.getValue(node, world);
+    }
+
+}
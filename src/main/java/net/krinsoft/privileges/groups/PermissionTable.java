@@ -0,0 +1,94 @@
+package net.krinsoft.privileges.groups;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable table of the resolved permission nodes for a single group, keyed by world.<br>
+ * Worlds that have no world-specific nodes anywhere in the group's inheritance tree share the global table.
+ * @author krinsdeath
+ */
+public final class PermissionTable {
+    // the name of the group this table was compiled for
+    private final String group;
+    // the resolved nodes for worlds without any specific nodes
+    private final Map<String, Boolean> global;
+    // the resolved nodes for every world with specific nodes in the tree
+    private final Map<String, Map<String, Boolean>> worlds;
+    // the compiled build, break and interact rules of the tree
+    private final RuleIndex rules;
+
+    PermissionTable(String group, Map<String, Boolean> global, Map<String, Map<String, Boolean>> worlds, RuleIndex rules) {
+        this.group = group;
+        this.global = Collections.unmodifiableMap(global);
+        this.worlds = Collections.unmodifiableMap(worlds);
+        this.rules = rules;
+    }
+
+    /**
+     * Gets the name of the group this table was compiled for
+     * @return The group's name
+     */
+    public String getGroup() {
+        return this.group;
+    }
+
+    /**
+     * Gets the compiled build, break and interact rules of this group and every group it inherits
+     * @return The rule index
+     */
+    public RuleIndex getRules() {
+        return this.rules;
+    }
+
+    /**
+     * Gets the resolved permission nodes for the specified world
+     * @param world The name of the world, or null for the global nodes
+     * @return An unmodifiable map of node names to their values
+     */
+    public Map<String, Boolean> getNodes(String world) {
+        if (world != null) {
+            Map<String, Boolean> nodes = worlds.get(world);
+            if (nodes != null) {
+                return nodes;
+            }
+        }
+        return global;
+    }
+
+    /**
+     * Checks whether the specified node is explicitly set on the given world
+     * @param node The permission node
+     * @param world The name of the world
+     * @return true if the node is set, otherwise false
+     */
+    public boolean isSet(String node, String world) {
+        return getNodes(world).containsKey(node);
+    }
+
+    /**
+     * Gets the value of the specified node on the given world
+     * @param node The permission node
+     * @param world The name of the world
+     * @return The node's value, or false if it isn't set
+     */
+    public boolean getValue(String node, String world) {
+        Boolean value = getNodes(world).get(node);
+        return value != null && value;
+    }
+
+    /**
+     * Gets the names of the worlds which have their own resolved nodes
+     * @return An unmodifiable set of world names
+     */
+    public Set<String> getWorlds() {
+        return worlds.keySet();
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionTable{group=" + this.group + ",nodes=" + this.global.size() + ",worlds=" + this.worlds.keySet() + "}";
+    }
+
+}
@@ -3,15 +3,15 @@ package net.krinsoft.privileges.groups;
 import net.krinsoft.privileges.Privileges;
 import net.krinsoft.privileges.event.GroupPermissionAddEvent;
 import net.krinsoft.privileges.event.GroupPermissionRemoveEvent;
-import org.bukkit.World;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionDefault;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -29,51 +29,59 @@ public class RankedGroup implements Group {
     private String promotion;
     // this group's demotion
     private String demotion;
+    // this group's compiled permission nodes
+    private volatile PermissionTable table;
+    // this group's registered master permissions, by world
+    private final Map<String, Permission> worlds = new HashMap<String, Permission>();
 
     private Privileges plugin;
 
-    public RankedGroup(Privileges plugin, String name, int rank, List<String> tree) {
+    public RankedGroup(Privileges plugin, String name, int rank, List<String> tree, PermissionTable table) {
         this.plugin = plugin;
         this.name = name;
         this.rank = rank;
         this.tree = tree;
-        for (World world : plugin.getServer().getWorlds()) {
-            Permission worldPerm = plugin.getServer().getPluginManager().getPermission("master." + name + "." + world.getName());
-            if (worldPerm == null) {
-                worldPerm = new Permission("master." + name + "." + world.getName());
-            }
-            worldPerm.setDefault(PermissionDefault.FALSE);
+        setPermissionTable(table);
+        promotion = plugin.getGroupNode(name).getString("data.promotion", null);
+        demotion = plugin.getGroupNode(name).getString("data.demotion", null);
+    }
+
+    /**
+     * Swaps in a newly compiled permission table, and updates this group's loaded master permissions from it
+     * @param table The compiled permission table
+     */
+    void setPermissionTable(PermissionTable table) {
+        this.table = table;
+        for (Map.Entry<String, Permission> entry : worlds.entrySet()) {
+            Permission worldPerm = entry.getValue();
             worldPerm.getChildren().clear();
-            LinkedHashMap<String, Boolean> children = new LinkedHashMap<String, Boolean>();
-            for (String g : tree) {
-                ConfigurationSection group = plugin.getGroupNode(g);
-                if (group == null) { continue; }
-                for (String node : group.getStringList("permissions")) {
-                    if (node.startsWith("-")) {
-                        children.put(node.substring(1), false);
-                    } else {
-                        children.put(node, true);
-                    }
-                }
-                for (String node : group.getStringList("worlds." + world.getName())) {
-                    if (node.startsWith("-")) {
-                        children.put(node.substring(1), false);
-                    } else {
-                        children.put(node, true);
-                    }
-                }
-            }
-            if (!children.containsKey("group." + name)) {
-                children.put("group." + name, true);
-            }
-            worldPerm.getChildren().putAll(children);
-            if (plugin.getServer().getPluginManager().getPermission(worldPerm.getName()) == null) {
-                plugin.getServer().getPluginManager().addPermission(worldPerm);
-            }
+            worldPerm.getChildren().putAll(table.getNodes(entry.getKey()));
             worldPerm.recalculatePermissibles();
         }
-        promotion = plugin.getGroupNode(name).getString("data.promotion", null);
-        demotion = plugin.getGroupNode(name).getString("data.demotion", null);
+    }
+
+    /**
+     * Re-reads this group's options from groups.yml and swaps in its recompiled inheritance tree and permission table
+     * @param tree The group's new inheritance tree
+     * @param table The group's new permission table
+     */
+    void refresh(List<String> tree, PermissionTable table) {
+        ConfigurationSection group = plugin.getGroupNode(name);
+        if (group != null) {
+            rank = group.getInt("rank", 1);
+            promotion = group.getString("data.promotion", null);
+            demotion = group.getString("data.demotion", null);
+        }
+        this.tree = tree;
+        setPermissionTable(table);
+    }
+
+    /**
+     * Gets the compiled permission table for this group
+     * @return The group's permission table
+     */
+    public PermissionTable getPermissionTable() {
+        return this.table;
     }
 
     public List<String> getGroupTree() {
@@ -100,17 +108,34 @@ public class RankedGroup implements Group {
     }
 
     public boolean hasPermission(String permission, String world) {
-        Permission perm = plugin.getServer().getPluginManager().getPermission(getMasterPermission(world));
-        if (perm != null && perm.getChildren().containsKey(permission)) {
-            return perm.getChildren().get(permission);
-        }
-        return false;
+        return table.getValue(permission, world);
     }
 
     public String getMasterPermission(String world) {
         return "master." + name + "." + world;
     }
 
+    public String loadMasterPermission(String world) {
+        if (!worlds.containsKey(world)) {
+            // the permission may be left over from before a reload, so its nodes are always replaced
+            Permission worldPerm = plugin.getServer().getPluginManager().getPermission(getMasterPermission(world));
+            boolean registered = worldPerm != null;
+            if (!registered) {
+                worldPerm = new Permission(getMasterPermission(world));
+            }
+            worldPerm.setDefault(PermissionDefault.FALSE);
+            worldPerm.getChildren().clear();
+            worldPerm.getChildren().putAll(table.getNodes(world));
+            if (registered) {
+                worldPerm.recalculatePermissibles();
+            } else {
+                plugin.getServer().getPluginManager().addPermission(worldPerm);
+            }
+            worlds.put(world, worldPerm);
+        }
+        return getMasterPermission(world);
+    }
+
     public boolean addPermission(String world, String node) {
         if (node != null) {
             ConfigurationSection config = plugin.getGroupNode(name);
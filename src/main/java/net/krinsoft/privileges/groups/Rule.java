@@ -0,0 +1,136 @@
+package net.krinsoft.privileges.groups;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+
+/**
+ * A single build, break or interact rule from a group's 'rules' section in groups.yml, optionally limited to certain
+ * materials, a world and a cuboid region
+ * @author krinsdeath
+ */
+final class Rule {
+    private final static int MATERIALS = Material.values().length;
+
+    final String name;
+    // the actions this rule applies to, as WorldRules action bits
+    final int actions;
+    // the materials this rule applies to, as bits by ordinal, or null for every material
+    final long[] materials;
+    // the lower case name of the world this rule applies to, or null for every world
+    final String world;
+    // whether this rule is limited to the region below
+    final boolean region;
+    final int minX, minY, minZ, maxX, maxY, maxZ;
+    final boolean allow;
+    // the rule's precedence in a group's tree; later rules override earlier ones
+    final int priority;
+
+    private Rule(String name, int actions, long[] materials, String world, int[] from, int[] to, boolean allow, int priority) {
+        this.name = name;
+        this.actions = actions;
+        this.materials = materials;
+        this.world = world;
+        this.region = from != null;
+        this.minX = region ? Math.min(from[0], to[0]) : 0;
+        this.minY = region ? Math.min(from[1], to[1]) : 0;
+        this.minZ = region ? Math.min(from[2], to[2]) : 0;
+        this.maxX = region ? Math.max(from[0], to[0]) : 0;
+        this.maxY = region ? Math.max(from[1], to[1]) : 0;
+        this.maxZ = region ? Math.max(from[2], to[2]) : 0;
+        this.allow = allow;
+        this.priority = priority;
+    }
+
+    /**
+     * Parses the specified rule section
+     * @param group The name of the group which defines the rule
+     * @param name The rule's name
+     * @param section The rule's section
+     * @param errors The list which any problems with the rule are added to
+     * @return The rule, or null if it's invalid
+     */
+    static Rule parse(String group, String name, ConfigurationSection section, List<String> errors) {
+        String prefix = "Rule '" + name + "' in group '" + group + "' ";
+        int actions = 0;
+        List<String> actionList = section.getStringList("actions");
+        if (actionList.isEmpty()) {
+            actions = WorldRules.BUILD | WorldRules.BREAK | WorldRules.INTERACT;
+        }
+        for (String action : actionList) {
+            if (action.equalsIgnoreCase("build") || action.equalsIgnoreCase("place")) {
+                actions |= WorldRules.BUILD;
+            } else if (action.equalsIgnoreCase("break")) {
+                actions |= WorldRules.BREAK;
+            } else if (action.equalsIgnoreCase("interact")) {
+                actions |= WorldRules.INTERACT;
+            } else {
+                errors.add(prefix + "has an unknown action: " + action);
+            }
+        }
+        long[] materials = null;
+        List<String> materialList = section.getStringList("materials");
+        if (!materialList.isEmpty()) {
+            materials = new long[(MATERIALS + 63) >>> 6];
+            for (String value : materialList) {
+                Material material = Material.matchMaterial(value);
+                if (material == null) {
+                    errors.add(prefix + "has an unknown material: " + value);
+                    continue;
+                }
+                materials[material.ordinal() >>> 6] |= 1L << material.ordinal();
+            }
+        }
+        int[] from = null;
+        int[] to = null;
+        if (section.contains("from") || section.contains("to")) {
+            from = toPoint(section.getIntegerList("from"));
+            to = toPoint(section.getIntegerList("to"));
+            if (from == null || to == null) {
+                errors.add(prefix + "needs 'from' and 'to' as [x, y, z]; it was ignored.");
+                return null;
+            }
+        }
+        String world = section.getString("world", null);
+        return new Rule(name, actions, materials, world != null ? world.toLowerCase() : null, from, to, section.getBoolean("allow", false), 0);
+    }
+
+    private static int[] toPoint(List<Integer> list) {
+        if (list.size() != 3) {
+            return null;
+        }
+        return new int[] { list.get(0), list.get(1), list.get(2) };
+    }
+
+    /**
+     * Checks whether this rule applies to the specified action
+     * @param action The action's bit
+     * @param ordinal The ordinal of the block's material
+     * @param x The block's x coordinate
+     * @param y The block's y coordinate
+     * @param z The block's z coordinate
+     * @return true if the rule applies, otherwise false
+     */
+    boolean matches(int action, int ordinal, int x, int y, int z) {
+        if ((actions & action) == 0) {
+            return false;
+        }
+        if (materials != null && (materials[ordinal >>> 6] & (1L << ordinal)) == 0) {
+            return false;
+        }
+        return !region || (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ);
+    }
+
+    /**
+     * Copies this rule with the specified precedence, for use in a group's compiled rule index
+     * @param priority The rule's position in the group's tree
+     * @return The copy
+     */
+    Rule withPriority(int priority) {
+        int[] from = region ? new int[] { minX, minY, minZ } : null;
+        int[] to = region ? new int[] { maxX, maxY, maxZ } : null;
+        return new Rule(name, actions, materials, world, from, to, allow, priority);
+    }
+
+}
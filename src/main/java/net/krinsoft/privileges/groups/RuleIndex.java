@@ -0,0 +1,70 @@
+package net.krinsoft.privileges.groups;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled build, break and interact rules of a single group, including the rules of every group it inherits.<br>
+ * Each world named by a rule gets its own {@link WorldRules}; every other world shares the rules which name no world.
+ * @author krinsdeath
+ */
+public final class RuleIndex {
+    final static RuleIndex EMPTY = new RuleIndex(new ArrayList<Rule>());
+
+    private final Map<String, WorldRules> worlds;
+    private final WorldRules others;
+    private final int size;
+
+    /**
+     * Compiles the specified rules
+     * @param rules The rules, from the base inherited group's first rule to the group's own last rule
+     */
+    RuleIndex(List<Rule> rules) {
+        List<Rule> ranked = new ArrayList<Rule>();
+        List<Rule> global = new ArrayList<Rule>();
+        Map<String, List<Rule>> named = new HashMap<String, List<Rule>>();
+        for (Rule rule : rules) {
+            Rule r = rule.withPriority(ranked.size());
+            ranked.add(r);
+            if (r.world == null) {
+                global.add(r);
+            } else if (!named.containsKey(r.world)) {
+                named.put(r.world, new ArrayList<Rule>());
+            }
+        }
+        Map<String, WorldRules> compiled = new HashMap<String, WorldRules>();
+        for (Map.Entry<String, List<Rule>> entry : named.entrySet()) {
+            for (Rule r : ranked) {
+                if (r.world == null || r.world.equals(entry.getKey())) {
+                    entry.getValue().add(r);
+                }
+            }
+            compiled.put(entry.getKey(), new WorldRules(entry.getValue()));
+        }
+        this.worlds = Collections.unmodifiableMap(compiled);
+        this.others = global.isEmpty() ? WorldRules.EMPTY : new WorldRules(global);
+        this.size = ranked.size();
+    }
+
+    /**
+     * Gets the compiled rules for the specified world
+     * @param world The world's name
+     * @return The world's rules
+     */
+    public WorldRules getWorld(String world) {
+        WorldRules rules = worlds.get(world.toLowerCase());
+        return rules != null ? rules : others;
+    }
+
+    /**
+     * Gets the number of rules in this index
+     * @return The number of rules
+     */
+    public int size() {
+        return size;
+    }
+
+}
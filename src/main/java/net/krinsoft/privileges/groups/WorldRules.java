@@ -0,0 +1,201 @@
+package net.krinsoft.privileges.groups;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled build, break and interact rules of a single group in a single world.<br>
+ * Rules which aren't limited to a region don't depend on the block's position, so they're compiled into the winning rule
+ * for each action and material. Rules limited to a region are filed under every 64x64 column their region overlaps, so a
+ * check only looks up one winner and the few rules in the block's own column, however many rules there are in total.
+ * Regions which would cover more than {@link #MAX_CELLS} columns are checked against every block instead.
+ * @author krinsdeath
+ */
+public final class WorldRules {
+    /**
+     * Placing a block
+     */
+    public final static int BUILD = 1;
+    /**
+     * Breaking a block
+     */
+    public final static int BREAK = 2;
+    /**
+     * Interacting with a block
+     */
+    public final static int INTERACT = 4;
+
+    /**
+     * No rule applies, so the permission nodes decide
+     */
+    public final static int NONE = 0;
+    /**
+     * A rule allows the action
+     */
+    public final static int ALLOW = 1;
+    /**
+     * A rule denies the action
+     */
+    public final static int DENY = 2;
+
+    final static WorldRules EMPTY = new WorldRules(new ArrayList<Rule>());
+
+    private final static int MATERIALS = Material.values().length;
+    // the number of actions, and so of action bits
+    private final static int ACTIONS = 3;
+    // the number of bits in a column's x and z coordinates
+    private final static int SHIFT = 6;
+    private final static int MAX_CELLS = 4096;
+    private final static Comparator<Rule> PRECEDENCE = new Comparator<Rule>() {
+        public int compare(Rule a, Rule b) {
+            return b.priority < a.priority ? -1 : (b.priority == a.priority ? 0 : 1);
+        }
+    };
+
+    // the winning rule without a region for each action bit, by material ordinal; null where no such rule applies
+    private final Rule[][] winners = new Rule[ACTIONS][];
+    // the rules with regions too large to file by column, highest precedence first
+    private final Rule[] wide;
+    // the columns which have regional rules, in an open-addressed table keyed by packed column coordinates
+    private final long[] keys;
+    private final Rule[][] cells;
+    private final int mask;
+    private final boolean empty;
+
+    WorldRules(List<Rule> rules) {
+        List<Rule> large_regions = new ArrayList<Rule>();
+        Map<Long, List<Rule>> columns = new HashMap<Long, List<Rule>>();
+        for (int action = 0; action < ACTIONS; action++) {
+            winners[action] = new Rule[MATERIALS];
+        }
+        for (Rule rule : rules) {
+            if (!rule.region) {
+                for (int action = 0; action < ACTIONS; action++) {
+                    Rule[] winner = winners[action];
+                    for (int ordinal = 0; ordinal < MATERIALS; ordinal++) {
+                        if (rule.matches(1 << action, ordinal, 0, 0, 0) && (winner[ordinal] == null || rule.priority > winner[ordinal].priority)) {
+                            winner[ordinal] = rule;
+                        }
+                    }
+                }
+                continue;
+            }
+            long width = ((long) (rule.maxX >> SHIFT) - (rule.minX >> SHIFT) + 1);
+            long depth = ((long) (rule.maxZ >> SHIFT) - (rule.minZ >> SHIFT) + 1);
+            if (width * depth > MAX_CELLS) {
+                large_regions.add(rule);
+                continue;
+            }
+            for (int cx = rule.minX >> SHIFT; cx <= rule.maxX >> SHIFT; cx++) {
+                for (int cz = rule.minZ >> SHIFT; cz <= rule.maxZ >> SHIFT; cz++) {
+                    Long key = key(cx, cz);
+                    List<Rule> column = columns.get(key);
+                    if (column == null) {
+                        column = new ArrayList<Rule>();
+                        columns.put(key, column);
+                    }
+                    column.add(rule);
+                }
+            }
+        }
+        Collections.sort(large_regions, PRECEDENCE);
+        this.wide = large_regions.toArray(new Rule[large_regions.size()]);
+        int capacity = 1;
+        while (capacity < columns.size() * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.cells = new Rule[capacity][];
+        this.mask = capacity - 1;
+        for (Map.Entry<Long, List<Rule>> entry : columns.entrySet()) {
+            List<Rule> column = entry.getValue();
+            Collections.sort(column, PRECEDENCE);
+            int slot = slot(entry.getKey());
+            while (cells[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = entry.getKey();
+            cells[slot] = column.toArray(new Rule[column.size()]);
+        }
+        this.empty = rules.isEmpty();
+    }
+
+    /**
+     * Checks whether any rule decides the specified action
+     * @param action {@link #BUILD}, {@link #BREAK} or {@link #INTERACT}
+     * @param type The block's material
+     * @param x The block's x coordinate
+     * @param y The block's y coordinate
+     * @param z The block's z coordinate
+     * @return {@link #ALLOW} or {@link #DENY} from the matching rule with the highest precedence, or {@link #NONE}
+     */
+    public int check(int action, Material type, int x, int y, int z) {
+        if (empty) {
+            return NONE;
+        }
+        int ordinal = type.ordinal();
+        Rule best = winners[Integer.numberOfTrailingZeros(action)][ordinal];
+        if (wide.length > 0) {
+            Rule large = first(wide, action, ordinal, x, y, z);
+            if (large != null && (best == null || large.priority > best.priority)) {
+                best = large;
+            }
+        }
+        Rule[] column = column(x >> SHIFT, z >> SHIFT);
+        if (column != null) {
+            Rule regional = first(column, action, ordinal, x, y, z);
+            if (regional != null && (best == null || regional.priority > best.priority)) {
+                best = regional;
+            }
+        }
+        if (best == null) {
+            return NONE;
+        }
+        return best.allow ? ALLOW : DENY;
+    }
+
+    /**
+     * Checks whether this world has no rules at all
+     * @return true if there are no rules, otherwise false
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    private static Rule first(Rule[] rules, int action, int ordinal, int x, int y, int z) {
+        for (Rule rule : rules) {
+            if (rule.matches(action, ordinal, x, y, z)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private Rule[] column(int cx, int cz) {
+        long key = key(cx, cz);
+        int slot = slot(key);
+        while (cells[slot] != null) {
+            if (keys[slot] == key) {
+                return cells[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+}
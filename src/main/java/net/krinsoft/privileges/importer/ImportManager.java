@@ -125,13 +125,14 @@ public class ImportManager {
                     } catch (Exception e) {
                         group = plugin.getConfig().getString("default_group", "default");
                     }
-                    plugin.getUsers().set("users." + username + ".group", group);
+                    ConfigurationSection user = plugin.getUserNode(username);
+                    user.set("group", group);
                     plugin.debug("[" + username + "] Set group to '" + group + "'");
                     ConfigurationSection userPerms = userSection.getConfigurationSection(username + "/permissions");
                     permList = new ArrayList<String>();
                     /////////////////////////
                     // permissions section
-                    permList.addAll(plugin.getUsers().getStringList("users." + username + ".permissions"));
+                    permList.addAll(user.getStringList("permissions"));
                     if (userPerms != null) {
                         header = "[" + username + "] Importing (permissions): ";
                         // user has custom permissions set
@@ -149,7 +150,7 @@ public class ImportManager {
                             plugin.debug(header + node);
                         }
                     }
-                    plugin.getUsers().set("users." + username + ".permissions", permList);
+                    user.set("permissions", permList);
                     // end permissions section
                     /////////////////////////
                     // worlds section
@@ -159,7 +160,7 @@ public class ImportManager {
                         for (String world : userWorlds.getKeys(false)) {
                             header = "[" + username + "] Importing (worlds." + world + "): ";
                             permList = new ArrayList<String>();
-                            permList.addAll(plugin.getUsers().getStringList("users." + username + ".worlds." + world));
+                            permList.addAll(user.getStringList("worlds." + world));
                             for (String node : userWorlds.getConfigurationSection(world).getKeys(false)) {
                                 boolean val = userWorlds.getBoolean(world +"/" + node);
                                 if (node.equalsIgnoreCase("permissions.*")) {
@@ -173,9 +174,10 @@ public class ImportManager {
                                 permList.add(node);
                                 plugin.debug(header + node);
                             }
-                            plugin.getUsers().set("users." + username + ".worlds." + world, permList);
+                            user.set("worlds." + world, permList);
                         }
                     }
+                    plugin.setUserNode(username, user);
                     importedUsers++;
                     // end worlds section
                     /////////////////////////
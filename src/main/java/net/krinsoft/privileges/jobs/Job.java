@@ -0,0 +1,152 @@
+package net.krinsoft.privileges.jobs;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bulk change to the stored users, which is run by the {@link JobManager} in bounded chunks.<br>
+ * Every user is checked, and the changed record of each selected user is built, in chunks of a few hundred per tick. The
+ * changed records are then stored all at once in a single tick, so the users never end up half changed. Users which are
+ * stored by anything else while the job runs are checked again right before the changes are stored. A cancelled job
+ * changes nothing.
+ * @author krinsdeath
+ */
+public abstract class Job {
+    private final String name;
+    private final CommandSender sender;
+    // a snapshot of the users to check
+    private final List<String> users;
+    private final Set<String> included;
+    // the changed record of each selected user, or null for users who are removed
+    private final Map<String, ConfigurationSection> changes = new LinkedHashMap<String, ConfigurationSection>();
+    // the checked users who were stored since they were checked
+    private final Set<String> stale = new HashSet<String>();
+    private int position;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a job which checks each of the specified users
+     * @param name A short description of the job
+     * @param sender The sender who started the job, who is told about its progress
+     * @param users The names of the users to check
+     */
+    protected Job(String name, CommandSender sender, Collection<String> users) {
+        this.name = name;
+        this.sender = sender;
+        this.users = new ArrayList<String>(users);
+        this.included = new HashSet<String>(users);
+    }
+
+    /**
+     * Checks whether the specified user should be changed. This runs on the main thread, a chunk of users at a time.
+     * @param user The name of the user
+     * @return true if the user should be changed, otherwise false
+     */
+    protected abstract boolean select(String user);
+
+    /**
+     * Builds the changed record of the specified user, right after they were selected. Nothing is stored yet.
+     * @param user The name of the user
+     * @return The user's changed record, or null to remove the user
+     */
+    protected abstract ConfigurationSection change(String user);
+
+    /**
+     * Runs in the same tick the changed records were stored
+     * @param changed The number of users which were changed
+     */
+    protected abstract void finish(int changed);
+
+    public String getName() {
+        return name;
+    }
+
+    public CommandSender getSender() {
+        return sender;
+    }
+
+    /**
+     * Gets the number of users checked so far
+     * @return The number of users
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the number of users this job checks
+     * @return The number of users
+     */
+    public int getSize() {
+        return users.size();
+    }
+
+    /**
+     * Stops this job without changing anything
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks the next chunk of users
+     * @param chunk The maximum number of users to check
+     * @return true if every user has been checked, otherwise false
+     */
+    boolean step(int chunk) {
+        int end = Math.min(users.size(), position + chunk);
+        for (; position < end && !cancelled; position++) {
+            String user = users.get(position);
+            if (select(user)) {
+                changes.put(user, change(user));
+            }
+        }
+        return position >= users.size();
+    }
+
+    /**
+     * Notes that the specified user was stored, so they're checked again before the changes are stored
+     * @param user The name of the user
+     */
+    void stored(String user) {
+        if (included.contains(user)) {
+            stale.add(user);
+        }
+    }
+
+    /**
+     * Checks the users which were stored since they were checked again, and gets every change to store
+     * @return The changed records by user name, with null records for users who are removed
+     */
+    Map<String, ConfigurationSection> collect() {
+        for (String user : stale) {
+            changes.remove(user);
+            if (select(user)) {
+                changes.put(user, change(user));
+            }
+        }
+        stale.clear();
+        return changes;
+    }
+
+    /**
+     * Finishes the job, once its changes were stored
+     * @param changed The number of users which were changed
+     */
+    void complete(int changed) {
+        finish(changed);
+    }
+
+}
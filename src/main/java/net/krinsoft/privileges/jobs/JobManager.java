@@ -0,0 +1,129 @@
+package net.krinsoft.privileges.jobs;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the queued bulk jobs on the main thread, one chunk of users per job per tick
+ * @author krinsdeath
+ */
+public class JobManager {
+    private final Privileges plugin;
+    // the number of users each job checks per tick
+    private final int chunk_size;
+    private final List<Job> jobs = new ArrayList<Job>();
+    private int task = -1;
+
+    public JobManager(Privileges plugin) {
+        this.plugin = plugin;
+        this.chunk_size = Math.max(1, plugin.getConfig().getInt("jobs.chunk_size", 500));
+    }
+
+    /**
+     * Queues the specified job, and starts running the queued jobs if they aren't running yet
+     * @param job The job to run
+     */
+    public void submit(Job job) {
+        jobs.add(job);
+        job.getSender().sendMessage(ChatColor.GREEN + "Started '" + job.getName() + "' for " + job.getSize() + " users. Use " + ChatColor.AQUA + "/priv jobs cancel" + ChatColor.GREEN + " to stop it.");
+        if (task == -1) {
+            task = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, new Runnable() {
+                public void run() {
+                    tick();
+                }
+            }, 1L, 1L);
+        }
+    }
+
+    /**
+     * Cancels the jobs started by the specified sender, or every job if the sender is the console
+     * @param sender The sender cancelling their jobs
+     * @return The number of cancelled jobs
+     */
+    public int cancel(CommandSender sender) {
+        int cancelled = 0;
+        for (Job job : jobs) {
+            if (sender instanceof ConsoleCommandSender || job.getSender().getName().equals(sender.getName())) {
+                job.cancel();
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Cancels every job, without changing anything
+     */
+    public void cancelAll() {
+        for (Job job : jobs) {
+            job.cancel();
+        }
+        jobs.clear();
+        stop();
+    }
+
+    /**
+     * Gets the queued jobs
+     * @return A copy of the list of jobs
+     */
+    public List<Job> getJobs() {
+        return new ArrayList<Job>(jobs);
+    }
+
+    /**
+     * Notes that the specified user was stored, so the running jobs check them again before storing their changes
+     * @param user The name of the user
+     */
+    public void stored(String user) {
+        for (Job job : jobs) {
+            job.stored(user);
+        }
+    }
+
+    private void tick() {
+        // a finishing job may start another one
+        for (Job job : new ArrayList<Job>(jobs)) {
+            if (job.isCancelled()) {
+                jobs.remove(job);
+                job.getSender().sendMessage(ChatColor.RED + "'" + job.getName() + "' was cancelled; nothing was changed.");
+                continue;
+            }
+            int before = job.getPosition() * 4 / Math.max(1, job.getSize());
+            if (!job.step(chunk_size)) {
+                int after = job.getPosition() * 4 / Math.max(1, job.getSize());
+                if (after > before) {
+                    job.getSender().sendMessage("'" + job.getName() + "': checked " + job.getPosition() + " of " + job.getSize() + " users...");
+                }
+                continue;
+            }
+            jobs.remove(job);
+            if (job.isCancelled()) {
+                job.getSender().sendMessage(ChatColor.RED + "'" + job.getName() + "' was cancelled; nothing was changed.");
+                continue;
+            }
+            long time = System.nanoTime();
+            Map<String, ConfigurationSection> changes = job.collect();
+            plugin.setUserNodes(changes);
+            job.complete(changes.size());
+            plugin.debug("Applied '" + job.getName() + "' in " + ((System.nanoTime() - time) / 1000000L) + "ms.");
+        }
+        if (jobs.isEmpty()) {
+            stop();
+        }
+    }
+
+    private void stop() {
+        if (task != -1) {
+            plugin.getServer().getScheduler().cancelTask(task);
+            task = -1;
+        }
+    }
+
+}
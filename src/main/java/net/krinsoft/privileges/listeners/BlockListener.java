@@ -1,6 +1,8 @@
 package net.krinsoft.privileges.listeners;
 
 import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.groups.WorldRules;
+import net.krinsoft.privileges.profiling.Metric;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
@@ -14,23 +16,33 @@ import org.bukkit.event.block.BlockPlaceEvent;
 @SuppressWarnings("unused")
 public class BlockListener implements Listener {
 
+    private final Privileges plugin;
+    // the time spent checking build permissions
+    private final Metric build_time;
+
     public BlockListener(Privileges plugin) {
+        this.plugin = plugin;
+        this.build_time = plugin.getProfiler().get("listener.build");
     }
 
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void blockPlace(BlockPlaceEvent event) {
-        if (!event.getPlayer().hasPermission("privileges.build")) {
+        long time = System.nanoTime();
+        if (!plugin.getPlayerManager().getPermissionCache(event.getPlayer()).canBuild(event.getPlayer(), WorldRules.BUILD, event.getBlock())) {
             event.getPlayer().sendMessage("You don't have permission to do that!");
             event.setCancelled(true);
         }
+        build_time.since(time);
     }
 
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void blockBreak(BlockBreakEvent event) {
-        if (!event.getPlayer().hasPermission("privileges.build")) {
+        long time = System.nanoTime();
+        if (!plugin.getPlayerManager().getPermissionCache(event.getPlayer()).canBuild(event.getPlayer(), WorldRules.BREAK, event.getBlock())) {
             event.getPlayer().sendMessage("You don't have permission to do that!");
             event.setCancelled(true);
         }
+        build_time.since(time);
     }
 
 }
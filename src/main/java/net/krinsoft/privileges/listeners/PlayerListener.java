@@ -1,12 +1,15 @@
 package net.krinsoft.privileges.listeners;
 
 import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.players.PermissionCache;
+import net.krinsoft.privileges.profiling.Metric;
 import org.bukkit.ChatColor;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
@@ -21,14 +24,38 @@ import org.bukkit.event.player.PlayerQuitEvent;
 public class PlayerListener implements Listener {
 
     private Privileges plugin;
+    // the time spent in each handler
+    private final Metric prelogin_time;
+    private final Metric login_time;
+    private final Metric join_time;
+    private final Metric quit_time;
+    private final Metric world_time;
+    private final Metric interact_time;
 
     public PlayerListener(Privileges plugin) {
         this.plugin = plugin;
+        this.prelogin_time = plugin.getProfiler().get("listener.prelogin");
+        this.login_time = plugin.getProfiler().get("listener.login");
+        this.join_time = plugin.getProfiler().get("listener.join");
+        this.quit_time = plugin.getProfiler().get("listener.quit");
+        this.world_time = plugin.getProfiler().get("listener.world");
+        this.interact_time = plugin.getProfiler().get("listener.interact");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void playerPreLogin(AsyncPlayerPreLoginEvent event) {
+        long time = System.nanoTime();
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            plugin.getPlayerManager().preload(event.getName()); // parse the user's node off the main thread
+        }
+        prelogin_time.since(time);
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void playerLogin(PlayerLoginEvent event) {
-        plugin.getPlayerManager().register(event.getPlayer()); // register player for early perm checks
+        long time = System.nanoTime();
+        plugin.getPlayerManager().login(event.getPlayer()); // register player for early perm checks
+        login_time.since(time);
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
@@ -40,63 +67,44 @@ public class PlayerListener implements Listener {
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void playerJoin(PlayerJoinEvent event) {
-        plugin.getPlayerManager().register(event.getPlayer()); // re-register player for world permissions
+        long time = System.nanoTime();
+        plugin.getPlayerManager().join(event.getPlayer()); // reconcile the player's world permissions
+        join_time.since(time);
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void playerQuit(PlayerQuitEvent event) {
+        long time = System.nanoTime();
+        plugin.setLastSeen(event.getPlayer().getName()); // used to sweep stale users
         plugin.getPlayerManager().unregister(event.getPlayer().getName());
+        quit_time.since(time);
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void playerChangedWorld(PlayerChangedWorldEvent event) {
+        long time = System.nanoTime();
         plugin.getPlayerManager().changeWorld(event.getPlayer(), event.getFrom());
+        world_time.since(time);
     }
 
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void playerInteract(PlayerInteractEvent event) {
+        long time = System.nanoTime();
+        checkInteract(event);
+        interact_time.since(time);
+    }
+
+    private void checkInteract(PlayerInteractEvent event) {
         Block b = event.getClickedBlock();
         if (b == null) { return; }
-        String[] perm = new String[] { "privileges.interact." + b.getTypeId(), "privileges.interact." + b.getType().name() };
         Player p = event.getPlayer();
-        if (!p.hasPermission("privileges.interact")) {
-            //plugin.debug("Checking " + perm[0] + "...");
-            if (p.isPermissionSet(perm[0])) {
-                if (!p.hasPermission(perm[0])) {
-                    p.sendMessage(ChatColor.RED + "You do not have permission to interact with " + ChatColor.GOLD + b.getType().name() + ChatColor.RED + "!");
-                    event.setCancelled(true);
-                    return;
-                } else {
-                    return;
-                }
-            }
-            //plugin.debug("Checking " + perm[1] + "...");
-            if (p.isPermissionSet(perm[1])) {
-                if (!p.hasPermission(perm[1])) {
-                    p.sendMessage(ChatColor.RED + "You do not have permission to interact with " + ChatColor.GOLD + b.getType().name() + ChatColor.RED + "!");
-                    event.setCancelled(true);
-                } else {
-                    return;
-                }
-            }
+        int decision = plugin.getPlayerManager().getPermissionCache(p).checkInteract(p, b);
+        if (decision == PermissionCache.DENIED_MATERIAL) {
+            p.sendMessage(ChatColor.RED + "You do not have permission to interact with " + ChatColor.GOLD + b.getType().name() + ChatColor.RED + "!");
+            event.setCancelled(true);
+        } else if (decision == PermissionCache.DENIED) {
             p.sendMessage(ChatColor.RED + "You do not have permission to interact with that!");
             event.setCancelled(true);
-        } else {
-            //plugin.debug("Checking " + perm[0] + "...");
-            if (p.isPermissionSet(perm[0])) {
-                if (!p.hasPermission(perm[0])) {
-                    p.sendMessage(ChatColor.RED + "You do not have permission to interact with " + ChatColor.GOLD + b.getType().name() + ChatColor.RED + "!");
-                    event.setCancelled(true);
-                    return;
-                }
-            }
-            //plugin.debug("Checking " + perm[1] + "...");
-            if (p.isPermissionSet(perm[1])) {
-                if (!p.hasPermission(perm[1])) {
-                    p.sendMessage(ChatColor.RED + "You do not have permission to interact with " + ChatColor.GOLD + b.getType().name() + ChatColor.RED + "!");
-                    event.setCancelled(true);
-                }
-            }
         }
     }
 
@@ -0,0 +1,170 @@
+package net.krinsoft.privileges.players;
+
+import net.krinsoft.privileges.groups.Group;
+import net.krinsoft.privileges.groups.RankedGroup;
+import net.krinsoft.privileges.groups.WorldRules;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Arrays;
+
+/**
+ * A single player's decisions for Privileges' own hot nodes in their current world: 'privileges.build', the interact
+ * nodes of each material, and their group's build, break and interact rules for the world.<br>
+ * The build flag and the world's rules are resolved whenever the player's attachment is reapplied. Each interact
+ * decision is worked out the first time the player clicks a material, and kept as a few bits until the player changes
+ * worlds or their permissions are reapplied, so repeated block events don't allocate or hash anything. Permissions
+ * added by other plugins' attachments aren't seen until then.
+ * @author krinsdeath
+ */
+public final class PermissionCache {
+    /**
+     * The player may interact with the material
+     */
+    public final static int ALLOWED = 0;
+    /**
+     * The player may not interact with the material, because they lack 'privileges.interact'
+     */
+    public final static int DENIED = 1;
+    /**
+     * The player may not interact with the material, because its node is set to false
+     */
+    public final static int DENIED_MATERIAL = 2;
+
+    private final static Material[] MATERIALS = Material.values();
+    // the interact nodes for each material, by ordinal
+    private final static String[] ID_NODES = new String[MATERIALS.length];
+    private final static String[] NAME_NODES = new String[MATERIALS.length];
+    private final static int WORDS = (MATERIALS.length + 63) >>> 6;
+
+    static {
+        for (Material material : MATERIALS) {
+            ID_NODES[material.ordinal()] = ("privileges.interact." + material.getId()).intern();
+            NAME_NODES[material.ordinal()] = ("privileges.interact." + material.name()).intern();
+        }
+    }
+
+    // whether each material's decision is known, and the decision's bits
+    private final long[] checked = new long[WORDS];
+    private final long[] denied = new long[WORDS];
+    private final long[] named = new long[WORDS];
+    // the world the decisions were made in
+    private World world;
+    // the player's resolved hot nodes
+    private boolean build;
+    private boolean interact;
+    private boolean bypass;
+    // the player's group, and its rules for the player's world
+    private RankedGroup group;
+    private WorldRules rules;
+
+    /**
+     * Resolves the player's hot nodes and rules again for the specified group, and forgets every interact decision
+     * @param player The player whose permissions were reapplied
+     * @param group The player's group
+     */
+    public void refresh(org.bukkit.entity.Player player, Group group) {
+        this.group = group instanceof RankedGroup ? (RankedGroup) group : null;
+        refresh(player);
+    }
+
+    /**
+     * Resolves the player's hot nodes and rules again, and forgets every interact decision
+     * @param player The player whose permissions were reapplied
+     */
+    public void refresh(org.bukkit.entity.Player player) {
+        Arrays.fill(checked, 0L);
+        Arrays.fill(denied, 0L);
+        Arrays.fill(named, 0L);
+        world = player.getWorld();
+        build = player.hasPermission("privileges.build");
+        interact = player.hasPermission("privileges.interact");
+        bypass = player.hasPermission("privileges.rules.bypass");
+        rules = group != null ? group.getPermissionTable().getRules().getWorld(world.getName()) : null;
+    }
+
+    /**
+     * Checks whether the specified player may place or break the given block. A rule which matches the block decides,
+     * and otherwise 'privileges.build' does.
+     * @param player The player who is building
+     * @param action {@link WorldRules#BUILD} or {@link WorldRules#BREAK}
+     * @param block The block being placed or broken
+     * @return true if the player may build, otherwise false
+     */
+    public boolean canBuild(org.bukkit.entity.Player player, int action, Block block) {
+        if (player.getWorld() != world) {
+            refresh(player);
+        }
+        int rule = checkRules(action, block);
+        if (rule != WorldRules.NONE) {
+            return rule == WorldRules.ALLOW;
+        }
+        return build;
+    }
+
+    /**
+     * Checks whether the specified player may interact with the given block. A rule which matches the block decides, and
+     * otherwise the interact nodes do.
+     * @param player The player who is interacting
+     * @param block The clicked block
+     * @return {@link #ALLOWED}, {@link #DENIED} or {@link #DENIED_MATERIAL}
+     */
+    public int checkInteract(org.bukkit.entity.Player player, Block block) {
+        if (player.getWorld() != world) {
+            refresh(player);
+        }
+        int rule = checkRules(WorldRules.INTERACT, block);
+        if (rule != WorldRules.NONE) {
+            return rule == WorldRules.ALLOW ? ALLOWED : DENIED_MATERIAL;
+        }
+        int ordinal = block.getType().ordinal();
+        int word = ordinal >>> 6;
+        long bit = 1L << ordinal;
+        if ((checked[word] & bit) == 0) {
+            int decision = decide(player, ordinal);
+            if (decision != ALLOWED) {
+                denied[word] |= bit;
+            }
+            if (decision == DENIED_MATERIAL) {
+                named[word] |= bit;
+            }
+            checked[word] |= bit;
+        }
+        if ((denied[word] & bit) == 0) {
+            return ALLOWED;
+        }
+        return (named[word] & bit) != 0 ? DENIED_MATERIAL : DENIED;
+    }
+
+    private int checkRules(int action, Block block) {
+        if (bypass || rules == null || rules.isEmpty()) {
+            return WorldRules.NONE;
+        }
+        return rules.check(action, block.getType(), block.getX(), block.getY(), block.getZ());
+    }
+
+    private int decide(org.bukkit.entity.Player player, int ordinal) {
+        String id = ID_NODES[ordinal];
+        String name = NAME_NODES[ordinal];
+        if (!interact) {
+            // only a material node set to true lets the player interact
+            if (player.isPermissionSet(id)) {
+                return player.hasPermission(id) ? ALLOWED : DENIED_MATERIAL;
+            }
+            if (player.isPermissionSet(name)) {
+                return player.hasPermission(name) ? ALLOWED : DENIED_MATERIAL;
+            }
+            return DENIED;
+        }
+        // a material node set to false stops the player from interacting
+        if (player.isPermissionSet(id) && !player.hasPermission(id)) {
+            return DENIED_MATERIAL;
+        }
+        if (player.isPermissionSet(name) && !player.hasPermission(name)) {
+            return DENIED_MATERIAL;
+        }
+        return ALLOWED;
+    }
+
+}
@@ -43,4 +43,12 @@ public interface Player {
      */
     public String getMasterPermission(String world);
 
+    /**
+     * Fetches this player's master permission for the given world, building and registering it with the server if it
+     * isn't already loaded
+     * @param world The world on which the player is currently playing
+     * @return The name of the permission
+     */
+    public String loadMasterPermission(String world);
+
 }
@@ -0,0 +1,108 @@
+package net.krinsoft.privileges.players;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.permissions.PermissionAttachment;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The single, long-lived permission attachment Privileges holds on a player.<br>
+ * Updates are applied as the difference between the attachment's current nodes and the desired ones, so that the player's
+ * permissions are only recalculated when something actually changed, and only once per update.
+ * @author krinsdeath
+ */
+public class PlayerAttachment {
+    // the attachment's backing node map, or null if it can't be accessed
+    private static Field permissions;
+    private static boolean resolved;
+
+    private final org.bukkit.entity.Player player;
+    private final PermissionAttachment attachment;
+    // the nodes currently set on the attachment
+    private final Map<String, Boolean> applied = new HashMap<String, Boolean>();
+
+    public PlayerAttachment(Privileges plugin, org.bukkit.entity.Player player) {
+        if (!resolved) {
+            resolved = true;
+            try {
+                permissions = PermissionAttachment.class.getDeclaredField("permissions");
+                permissions.setAccessible(true);
+            } catch (Exception e) {
+                plugin.debug("Unable to access the attachment's node map; attachment nodes will be set one at a time.");
+                permissions = null;
+            }
+        }
+        this.player = player;
+        this.attachment = player.addAttachment(plugin);
+    }
+
+    /**
+     * Checks whether this attachment belongs to the specified player entity
+     * @param player The player
+     * @return true if the attachment is attached to the player, otherwise false
+     */
+    public boolean isAttachedTo(org.bukkit.entity.Player player) {
+        return this.player == player;
+    }
+
+    /**
+     * Sets the attachment's nodes to the specified map, changing only the nodes which differ
+     * @param nodes The desired nodes and their values
+     * @return true if any node changed, otherwise false
+     */
+    public boolean apply(Map<String, Boolean> nodes) {
+        Map<String, Boolean> backing = getBackingMap();
+        boolean changed = false;
+        Iterator<Map.Entry<String, Boolean>> iterator = applied.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String node = iterator.next().getKey();
+            if (nodes.containsKey(node)) { continue; }
+            iterator.remove();
+            if (backing != null) {
+                backing.remove(node.toLowerCase());
+            } else {
+                attachment.unsetPermission(node);
+            }
+            changed = true;
+        }
+        for (Map.Entry<String, Boolean> entry : nodes.entrySet()) {
+            if (entry.getValue().equals(applied.get(entry.getKey()))) { continue; }
+            applied.put(entry.getKey(), entry.getValue());
+            if (backing != null) {
+                backing.put(entry.getKey().toLowerCase(), entry.getValue());
+            } else {
+                attachment.setPermission(entry.getKey(), entry.getValue());
+            }
+            changed = true;
+        }
+        if (changed && backing != null) {
+            player.recalculatePermissions();
+        }
+        return changed;
+    }
+
+    /**
+     * Removes this attachment from the player
+     */
+    public void remove() {
+        applied.clear();
+        attachment.remove();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Boolean> getBackingMap() {
+        if (permissions == null) {
+            return null;
+        }
+        try {
+            return (Map<String, Boolean>) permissions.get(attachment);
+        } catch (Exception e) {
+            permissions = null;
+            return null;
+        }
+    }
+
+}
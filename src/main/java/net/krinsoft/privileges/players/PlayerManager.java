@@ -2,16 +2,20 @@ package net.krinsoft.privileges.players;
 
 import net.krinsoft.privileges.Privileges;
 import net.krinsoft.privileges.groups.Group;
+import net.krinsoft.privileges.groups.GroupSnapshot;
+import net.krinsoft.privileges.profiling.Metric;
 import org.apache.commons.lang.Validate;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
-import org.bukkit.permissions.PermissionAttachment;
-import org.bukkit.permissions.PermissionAttachmentInfo;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An player manager that handles the creation and removal of player permissions within Privileges
@@ -20,10 +24,81 @@ import java.util.Map;
 public class PlayerManager {
     private final Privileges plugin;
     private final Map<String, Player> players = new HashMap<String, Player>();
-    private final Map<String, PermissionAttachment> attachment_cache = new HashMap<String, PermissionAttachment>();
+    private final Map<String, PlayerAttachment> attachment_cache = new HashMap<String, PlayerAttachment>();
+    private final Map<String, PlayerProfile> profiles = new ConcurrentHashMap<String, PlayerProfile>();
+    private final Map<String, Registration> registrations = new HashMap<String, Registration>();
+    // each online player's hot node decisions, by player entity so that lookups don't hash their name
+    private final Map<org.bukkit.entity.Player, PermissionCache> permission_cache = new IdentityHashMap<org.bukkit.entity.Player, PermissionCache>();
+    // the time from a player's login to their join, and the time spent in each of the hot paths
+    private final Metric login_time;
+    private final Metric register_time;
+    private final Metric world_time;
+    private final Metric unregister_time;
 
     public PlayerManager(Privileges plugin) {
         this.plugin = plugin;
+        this.login_time = plugin.getProfiler().get("player.login");
+        this.register_time = plugin.getProfiler().get("player.register");
+        this.world_time = plugin.getProfiler().get("player.world");
+        this.unregister_time = plugin.getProfiler().get("player.unregister");
+    }
+
+    /**
+     * Reads and parses the specified player's user node ahead of their login. This is meant to be called off the main
+     * thread, so that registering the player only has to attach the precomputed permissions.
+     * @param name The name of the player who is logging in
+     */
+    public void preload(String name) {
+        profiles.put(name.toLowerCase(), plugin.getUserProfile(name));
+    }
+
+    /**
+     * Registers the specified player as they log in, so their permissions are available to early checks.<br>
+     * This is the only full permission build for the login; {@link #join(org.bukkit.entity.Player)} completes it.
+     * @param player The player who is logging in
+     * @return true if the player was registered, otherwise false
+     */
+    public boolean login(org.bukkit.entity.Player player) {
+        long time = System.nanoTime();
+        if (!register(player)) {
+            return false;
+        }
+        registrations.put(player.getName().toLowerCase(), new Registration(player.getWorld().getName(), System.nanoTime() - time));
+        return true;
+    }
+
+    /**
+     * Completes the registration of the specified player as they join. Their permissions were already built when they
+     * logged in, so this only switches their world permissions if they joined on a different world.
+     * @param player The player who is joining
+     */
+    public void join(org.bukkit.entity.Player player) {
+        long time = System.nanoTime();
+        Registration registration = registrations.get(player.getName().toLowerCase());
+        if (registration == null || registration.state != State.LOGGED_IN || !players.containsKey(player.getName().toLowerCase())) {
+            // the player wasn't registered at login, so do the full build now
+            plugin.debug("Registering '" + player.getName() + "' on join, as they weren't registered at login.");
+            register(player);
+            return;
+        }
+        if (!registration.world.equals(player.getWorld().getName())) {
+            Player priv = players.get(player.getName().toLowerCase());
+            reconcile(player, priv, priv.getGroup());
+        }
+        registration.state = State.JOINED;
+        long cost = registration.time + (System.nanoTime() - time);
+        login_time.record(cost);
+        plugin.debug("'" + player.getName() + "' was registered in " + (cost / 1000L) + "us.");
+    }
+
+    /**
+     * Gets the registration state of the specified player
+     * @param name The player's name
+     * @return The player's state, or null if they aren't registered through a login
+     */
+    public State getState(String name) {
+        Registration registration = registrations.get(name.toLowerCase());
+        return registration != null ? registration.state : null;
     }
 
     public boolean register(String player) {
@@ -31,45 +106,129 @@ public class PlayerManager {
     }
 
     public boolean register(OfflinePlayer ply) {
+        long time = System.nanoTime();
+        boolean registered = build(ply);
+        register_time.since(time);
+        return registered;
+    }
+
+    private boolean build(OfflinePlayer ply) {
         if (ply == null || ply.getPlayer() == null) {
             plugin.debug("Attempted permission registration of a player that was offline or didn't exist!");
             return false;
         }
+        PlayerProfile profile = profiles.remove(ply.getName().toLowerCase());
+        if (profile == null) {
+            profile = plugin.getUserProfile(ply.getName());
+        }
+        if (!profile.isStored()) {
+            // create the user's node, or convert it to lower case
+            plugin.getUserNode(ply.getName());
+        }
+        // keep the user's record in memory while they're online
+        plugin.getStorage().pin(ply.getName().toLowerCase());
         Player priv = players.get(ply.getName().toLowerCase());
-        if (priv == null) {
-            priv = new PrivilegesPlayer(plugin, ply);
-            players.put(ply.getName().toLowerCase(), priv);
+        if (priv instanceof PrivilegesPlayer) {
+            // the profile may have changed, so the player's master permissions are rebuilt
+            ((PrivilegesPlayer) priv).unloadMasterPermissions();
         }
-        Group group = plugin.getGroupManager().addPlayerToGroup(ply.getName(), plugin.getUserNode(ply.getName()).getString("group"));
+        priv = new PrivilegesPlayer(plugin, ply, profile);
+        players.put(ply.getName().toLowerCase(), priv);
+        Group group = plugin.getGroupManager().addPlayerToGroup(ply.getName(), profile.getGroup());
         if (group == null) {
             // no group was found for the player, so set them to default
             group = plugin.getGroupManager().setGroup(ply.getName(), plugin.getGroupManager().getDefaultGroup().getName());
         }
-        org.bukkit.entity.Player player = ply.getPlayer();
-        // clear the player's permissions
-        for (PermissionAttachmentInfo info : player.getEffectivePermissions()) {
-            PermissionAttachment att = info.getAttachment();
-            if (att == null) { continue; }
-            att.unsetPermission(info.getPermission());
-        }
-        // build the attachment
-        PermissionAttachment attachment = player.addAttachment(plugin);
-        attachment.setPermission(group.getMasterPermission(player.getWorld().getName()), true);
-        attachment.setPermission(priv.getMasterPermission(player.getWorld().getName()), true);
-        attachment_cache.put(player.getName().toLowerCase(), attachment);
+        reconcile(ply.getPlayer(), priv, group);
+        publishView(ply.getName(), priv, group);
         return true;
     }
 
+    /**
+     * Publishes a new view of the specified player to the query service, from the latest group snapshot
+     * @param name The player's name
+     * @param priv The player's registration
+     * @param group The player's group
+     */
+    private void publishView(String name, Player priv, Group group) {
+        GroupSnapshot snapshot = group != null ? plugin.getGroupManager().getSnapshot().getGroup(group.getName()) : null;
+        if (snapshot == null || !(priv instanceof PrivilegesPlayer)) {
+            plugin.getService().remove(name);
+            return;
+        }
+        PlayerProfile profile = ((PrivilegesPlayer) priv).getProfile();
+        Map<String, Map<String, Boolean>> worlds = new HashMap<String, Map<String, Boolean>>();
+        for (String world : profile.getWorlds()) {
+            worlds.put(world, profile.getNodes(world));
+        }
+        plugin.getService().publish(name, snapshot, profile.getNodes(null), worlds);
+    }
+
     public void changeWorld(org.bukkit.entity.Player player, World world) {
+        long time = System.nanoTime();
         Player priv = players.get(player.getName().toLowerCase());
         Validate.notNull(priv);
         Validate.notNull(priv.getGroup());
-        PermissionAttachment attachment = attachment_cache.get(player.getName().toLowerCase());
-        Validate.notNull(attachment);
-        attachment.unsetPermission(priv.getGroup().getMasterPermission(world.getName()));
-        attachment.unsetPermission(priv.getMasterPermission(world.getName()));
-        attachment.setPermission(priv.getGroup().getMasterPermission(player.getWorld().getName()), true);
-        attachment.setPermission(priv.getMasterPermission(player.getWorld().getName()), true);
+        reconcile(player, priv, priv.getGroup());
+        world_time.since(time);
+    }
+
+    /**
+     * Brings the player's attachment in line with their group and their current world, changing only the nodes which differ
+     * @param player The player whose attachment we're updating
+     * @param priv The player's registration
+     * @param group The player's group
+     */
+    private void reconcile(org.bukkit.entity.Player player, Player priv, Group group) {
+        String world = player.getWorld().getName();
+        Map<String, Boolean> nodes = new LinkedHashMap<String, Boolean>();
+        nodes.put(group.loadMasterPermission(world), true);
+        nodes.put(priv.loadMasterPermission(world), true);
+        PlayerAttachment attachment = attachment_cache.get(player.getName().toLowerCase());
+        if (attachment != null && !attachment.isAttachedTo(player)) {
+            // left over from a previous login
+            attachment.remove();
+            attachment = null;
+        }
+        if (attachment == null) {
+            attachment = new PlayerAttachment(plugin, player);
+            attachment_cache.put(player.getName().toLowerCase(), attachment);
+        }
+        attachment.apply(nodes);
+        PermissionCache cache = permission_cache.get(player);
+        if (cache == null) {
+            cache = new PermissionCache();
+            permission_cache.put(player, cache);
+        }
+        cache.refresh(player, group);
+    }
+
+    /**
+     * Gets the specified player's cached hot node decisions, creating them if necessary
+     * @param player The player
+     * @return The player's permission cache
+     */
+    public PermissionCache getPermissionCache(org.bukkit.entity.Player player) {
+        PermissionCache cache = permission_cache.get(player);
+        if (cache == null) {
+            cache = new PermissionCache();
+            Player priv = players.get(player.getName().toLowerCase());
+            cache.refresh(player, priv != null ? priv.getGroup() : null);
+            permission_cache.put(player, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Resolves every online player's cached hot node decisions and views again, after a group's permissions changed
+     */
+    public void refreshPermissionCaches() {
+        for (Map.Entry<org.bukkit.entity.Player, PermissionCache> entry : permission_cache.entrySet()) {
+            entry.getValue().refresh(entry.getKey());
+        }
+        for (Map.Entry<String, Player> entry : players.entrySet()) {
+            publishView(entry.getKey(), entry.getValue(), entry.getValue().getGroup());
+        }
     }
 
     public void disable() {
@@ -85,17 +244,32 @@ public class PlayerManager {
     }
 
     public void unregister(String name) {
+        long time = System.nanoTime();
+        profiles.remove(name.toLowerCase());
+        registrations.remove(name.toLowerCase());
+        plugin.getService().remove(name);
+        plugin.getGroupManager().removePlayer(name);
+        plugin.getStorage().unpin(name.toLowerCase());
+        Iterator<org.bukkit.entity.Player> iterator = permission_cache.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getName().equalsIgnoreCase(name)) {
+                iterator.remove();
+            }
+        }
         Player player = players.remove(name.toLowerCase());
         if (player != null) {
-            attachment_cache.remove(name.toLowerCase());
-            for (World world : plugin.getServer().getWorlds()) {
-                String node = player.getMasterPermission(world.getName());
-                plugin.getServer().getPluginManager().removePermission(node);
+            PlayerAttachment attachment = attachment_cache.remove(name.toLowerCase());
+            if (attachment != null) {
+                attachment.remove();
+            }
+            if (player instanceof PrivilegesPlayer) {
+                ((PrivilegesPlayer) player).unloadMasterPermissions();
             }
             plugin.debug(name + " was successfully unregistered.");
         } else {
             plugin.debug(name + " was already unregistered!");
         }
+        unregister_time.since(time);
     }
 
     public Player getPlayer(String name) {
@@ -111,46 +285,37 @@ public class PlayerManager {
      * Calculates the group tree for the player by starting at the base inherited group and calculating upwards
      * @param group The name of the group whose inheritance tree we're calculating
      * @return The calculated group inheritance tree
+     * @see net.krinsoft.privileges.groups.InheritanceGraph#getTree(String)
      */
     public List<String> calculateGroupTree(String group) {
-        List<String> tree = new ArrayList<String>();
-        tree.add(0, group);
-        List<String> inheritance;
-        try {
-            inheritance = plugin.getGroupNode(group).getStringList("inheritance");
-        } catch (NullPointerException e) {
-            return tree;
-        }
-        for (String top : inheritance) {
-            if (top.equalsIgnoreCase(group)) { continue; }
-            for (String trunk : calculateBackwardTree(top)) {
-                tree.add(0, trunk);
-            }
-        }
-        return tree;
+        return new ArrayList<String>(plugin.getGroupManager().getInheritanceGraph().getTree(group));
     }
 
     /**
-     * Calculates the reverse sorted inheritance tree for the specified group
-     * @param group The name of the group that we're reverse sorting
-     * @return The backwards inheritance tree
+     * The stages of a player's registration between their login and their join
      */
-    private List<String> calculateBackwardTree(String group) {
-        List<String> tree = new ArrayList<String>();
-        tree.add(group);
-        List<String> inheritance;
-        try {
-            inheritance = plugin.getGroupNode(group).getStringList("inheritance");
-        } catch (NullPointerException e) {
-            return tree;
-        }
-        for (String top : inheritance) {
-            if (top.equalsIgnoreCase(group)) { continue; }
-            for (String trunk : calculateBackwardTree(top)) {
-                tree.add(trunk);
-            }
+    public enum State {
+        /**
+         * The player's permissions were built when they logged in
+         */
+        LOGGED_IN,
+        /**
+         * The player joined, and their world permissions were reconciled
+         */
+        JOINED
+    }
+
+    private static class Registration {
+        // the world the player's permissions were built for at login
+        private final String world;
+        // the time spent building the player's permissions at login, in nanoseconds
+        private final long time;
+        private State state = State.LOGGED_IN;
+
+        private Registration(String world, long time) {
+            this.world = world;
+            this.time = time;
         }
-        return tree;
     }
 
 }
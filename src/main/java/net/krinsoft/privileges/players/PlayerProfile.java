@@ -0,0 +1,120 @@
+package net.krinsoft.privileges.players;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, pre-parsed copy of a user's node in users.yml.<br>
+ * Profiles can be built off the main thread, so that registering the player only has to attach its permissions.
+ * @author krinsdeath
+ */
+public final class PlayerProfile {
+    // the player's lower case name
+    private final String name;
+    // the name of the player's group
+    private final String group;
+    // whether the user's node is stored under its lower case name
+    private final boolean stored;
+    // the player's global nodes
+    private final Map<String, Boolean> global;
+    // the player's resolved nodes for every world with specific nodes
+    private final Map<String, Map<String, Boolean>> worlds;
+
+    /**
+     * Parses the specified user node into a profile
+     * @param name The player's name
+     * @param node The user's node, or null if the user doesn't have one yet
+     * @param group The name of the group to use if the node doesn't define one
+     * @param stored Whether the node is stored under the player's lower case name
+     */
+    public PlayerProfile(String name, ConfigurationSection node, String group, boolean stored) {
+        this.name = name.toLowerCase();
+        Map<String, Boolean> globals = new LinkedHashMap<String, Boolean>();
+        Map<String, Map<String, Boolean>> world_nodes = new HashMap<String, Map<String, Boolean>>();
+        if (node != null) {
+            if (node.getString("group") != null) {
+                group = node.getString("group");
+            }
+            parse(node.getStringList("permissions"), globals);
+            ConfigurationSection section = node.getConfigurationSection("worlds");
+            if (section != null) {
+                for (String world : section.getKeys(false)) {
+                    List<String> list = section.getStringList(world);
+                    if (list.isEmpty()) { continue; }
+                    Map<String, Boolean> nodes = new LinkedHashMap<String, Boolean>(globals);
+                    parse(list, nodes);
+                    world_nodes.put(world, Collections.unmodifiableMap(nodes));
+                }
+            }
+        }
+        this.group = group;
+        this.stored = stored;
+        this.global = Collections.unmodifiableMap(globals);
+        this.worlds = Collections.unmodifiableMap(world_nodes);
+    }
+
+    /**
+     * Gets the player's lower case name
+     * @return The player's name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the name of the player's group
+     * @return The group name
+     */
+    public String getGroup() {
+        return this.group;
+    }
+
+    /**
+     * Checks whether this profile was read from a node stored under the player's lower case name.<br>
+     * If it wasn't, the node still has to be created or converted.
+     * @return true if the node is stored, otherwise false
+     */
+    public boolean isStored() {
+        return this.stored;
+    }
+
+    /**
+     * Gets the player's own permission nodes on the specified world, with the world's nodes overriding the global ones
+     * @param world The name of the world, or null for the global nodes
+     * @return An unmodifiable map of node names to their values
+     */
+    public Map<String, Boolean> getNodes(String world) {
+        if (world != null) {
+            Map<String, Boolean> nodes = worlds.get(world);
+            if (nodes != null) {
+                return nodes;
+            }
+        }
+        return global;
+    }
+
+    /**
+     * Gets the names of the worlds which have their own nodes
+     * @return An unmodifiable set of world names
+     */
+    public Set<String> getWorlds() {
+        return worlds.keySet();
+    }
+
+    private static void parse(List<String> list, Map<String, Boolean> nodes) {
+        for (String node : list) {
+            if (node.startsWith("-")) {
+                nodes.put(node.substring(1), false);
+            } else {
+                nodes.put(node, true);
+            }
+        }
+    }
+
+}
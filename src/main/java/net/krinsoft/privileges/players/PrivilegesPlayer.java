@@ -3,13 +3,12 @@ package net.krinsoft.privileges.players;
 import net.krinsoft.privileges.Privileges;
 import net.krinsoft.privileges.groups.Group;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.World;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionDefault;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -17,51 +16,51 @@ import java.util.Map;
  * @author krinsdeath
  */
 public class PrivilegesPlayer implements Player {
+    // the number of world master permissions kept registered for each player
+    private final static int WORLD_CACHE = 4;
+
     private final Privileges plugin;
     private final String name;
+    private final PlayerProfile profile;
     private Group group;
+    // the player's registered master permissions, least recently used first
+    private final Map<String, Permission> worlds = new LinkedHashMap<String, Permission>(WORLD_CACHE, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Permission> eldest) {
+            if (size() > WORLD_CACHE) {
+                plugin.getServer().getPluginManager().removePermission(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
 
     public PrivilegesPlayer(Privileges plugin, OfflinePlayer player) {
+        this(plugin, player, player != null ? new PlayerProfile(player.getName(), plugin.getUserNode(player.getName()), plugin.getConfig().getString("default_group", "default"), true) : null);
+    }
+
+    public PrivilegesPlayer(Privileges plugin, OfflinePlayer player, PlayerProfile profile) {
         if (player == null) {
             throw new NullPointerException("The specified player doesn't exist.");
         }
         this.plugin = plugin;
         this.name = player.getName().toLowerCase();
-        this.group = plugin.getGroupManager().getGroup(player);
-        Map<String, Boolean> globals = new HashMap<String, Boolean>();
-        ConfigurationSection user = plugin.getUserNode(player.getName());
-        for (String global : user.getStringList("permissions")) {
-            boolean val = true;
-            if (global.startsWith("-")) {
-                global = global.substring(1);
-                val = false;
-            }
-            globals.put(global, val);
-        }
-        for (World world : plugin.getServer().getWorlds()) {
-            Map<String, Boolean> worlds = new HashMap<String, Boolean>();
-            worlds.putAll(globals);
-            for (String node : user.getStringList("worlds." + world.getName())) {
-                boolean val = true;
-                if (node.startsWith("-")) {
-                    node = node.substring(1);
-                    val = false;
-                }
-                worlds.put(node, val);
-            }
-            Permission perm = new Permission("player." + this.name + "." + world.getName(), PermissionDefault.FALSE, worlds);
-            plugin.getServer().getPluginManager().removePermission(perm);
-            perm.getChildren().clear();
-            perm.getChildren().putAll(worlds);
-            plugin.getServer().getPluginManager().addPermission(perm);
-            perm.recalculatePermissibles();
-        }
+        this.profile = profile;
+        this.group = plugin.getGroupManager().getGroup(profile.getGroup());
     }
 
     public Group getGroup() {
         return this.group;
     }
 
+    /**
+     * Gets the parsed user node this player was registered with
+     * @return The player's profile
+     */
+    public PlayerProfile getProfile() {
+        return this.profile;
+    }
+
     public Group[] getGroups() {
         Group[] groups = new Group[getGroup().getGroupTree().size()];
         int i = 0;
@@ -91,7 +90,7 @@ public class PrivilegesPlayer implements Player {
                 }
             }
             // TODO: PlayerPermissionAddEvent
-            plugin.getUsers().set("users." + this.name.toLowerCase(), user);
+            plugin.setUserNode(this.name, user);
             return success;
         }
         return false;
@@ -112,7 +111,7 @@ public class PrivilegesPlayer implements Player {
                 user.set("permissions", nodes);
             }
             // TODO: PlayerPermissionRemoveEvent
-            plugin.getUsers().set("users." + this.name.toLowerCase(), user);
+            plugin.setUserNode(this.name, user);
             return success;
         }
         return false;
@@ -122,4 +121,34 @@ public class PrivilegesPlayer implements Player {
         return "player." + this.name + "." + world;
     }
 
+    public String loadMasterPermission(String world) {
+        if (worlds.get(world) == null) {
+            Map<String, Boolean> nodes = profile.getNodes(world);
+            Permission perm = plugin.getServer().getPluginManager().getPermission(getMasterPermission(world));
+            if (perm == null) {
+                perm = new Permission(getMasterPermission(world), PermissionDefault.FALSE, nodes);
+                plugin.getServer().getPluginManager().addPermission(perm);
+                // the player may still hold this node from a previous registration
+                perm.recalculatePermissibles();
+            } else {
+                // left over from a previous registration, so bring its nodes up to date
+                perm.getChildren().clear();
+                perm.getChildren().putAll(nodes);
+                perm.recalculatePermissibles();
+            }
+            worlds.put(world, perm);
+        }
+        return getMasterPermission(world);
+    }
+
+    /**
+     * Removes all of this player's loaded master permissions from the server
+     */
+    public void unloadMasterPermissions() {
+        for (Permission perm : worlds.values()) {
+            plugin.getServer().getPluginManager().removePermission(perm);
+        }
+        worlds.clear();
+    }
+
 }
@@ -0,0 +1,192 @@
+package net.krinsoft.privileges.profiling;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram for one instrumented code path.<br>
+ * Each thread records into one of a fixed number of striped recorders, picked by its thread id, so recording never
+ * takes a lock and short-lived threads don't leave anything behind. The buckets are spaced logarithmically, four per
+ * power of two, so a percentile is accurate to within about 25%.
+ * @author krinsdeath
+ */
+public final class Metric {
+    // the number of buckets; the first 16 hold exact values, the rest four per power of two
+    private final static int BUCKETS = 16 + (63 - 4) * 4;
+    // the slots after the buckets
+    private final static int COUNT = BUCKETS;
+    private final static int TOTAL = BUCKETS + 1;
+    private final static int MAX = BUCKETS + 2;
+    private final static int SIZE = BUCKETS + 3;
+    // the number of recorders, a power of two
+    private final static int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final String name;
+    private final AtomicLongArray[] recorders = new AtomicLongArray[STRIPES];
+    // the totals at the last reset, which are subtracted from the current totals
+    private volatile long[] baseline = new long[SIZE];
+    private volatile long reset = System.nanoTime();
+
+    Metric(String name) {
+        this.name = name;
+        for (int i = 0; i < STRIPES; i++) {
+            recorders[i] = new AtomicLongArray(SIZE);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one call of this code path
+     * @param nanos The time the call took, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) { nanos = 0; }
+        AtomicLongArray recorder = recorders[stripe(Thread.currentThread().getId())];
+        recorder.incrementAndGet(bucket(nanos));
+        recorder.incrementAndGet(COUNT);
+        recorder.addAndGet(TOTAL, nanos);
+        long max;
+        while (nanos > (max = recorder.get(MAX)) && !recorder.compareAndSet(MAX, max, nanos)) {
+            // another thread on this stripe raised the maximum first; try again against its value
+        }
+    }
+
+    /**
+     * Records one call of this code path which started at the specified time
+     * @param start The value of {@link System#nanoTime()} when the call started
+     */
+    public void since(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * Starts counting from zero again. Calls which are being recorded at the same time may be counted on either side.
+     */
+    public void reset() {
+        baseline = sum();
+        reset = System.nanoTime();
+    }
+
+    /**
+     * Takes a snapshot of the calls recorded since the last reset
+     * @return The snapshot
+     */
+    public Snapshot snapshot() {
+        long[] current = sum();
+        long[] base = baseline;
+        for (int i = 0; i < MAX; i++) {
+            current[i] -= base[i];
+        }
+        if (current[COUNT] == 0) {
+            current[MAX] = 0;
+        } else if (base[COUNT] > 0) {
+            // the maximum isn't tracked per reset, so fall back to the highest bucket which was used since
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (current[i] > 0) {
+                    current[MAX] = Math.min(current[MAX], upper(i));
+                    break;
+                }
+            }
+        }
+        return new Snapshot(current, System.nanoTime() - reset);
+    }
+
+    private long[] sum() {
+        long[] totals = new long[SIZE];
+        for (AtomicLongArray recorder : recorders) {
+            for (int i = 0; i < MAX; i++) {
+                totals[i] += recorder.get(i);
+            }
+            totals[MAX] = Math.max(totals[MAX], recorder.get(MAX));
+        }
+        return totals;
+    }
+
+    private static int stripes(int processors) {
+        int stripes = 4;
+        while (stripes < processors * 2 && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    private static int stripe(long thread) {
+        long hash = thread * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (STRIPES - 1);
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < 16) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) & 3;
+        return 16 + (exponent - 4) * 4 + sub;
+    }
+
+    private static long upper(int bucket) {
+        if (bucket < 16) {
+            return bucket;
+        }
+        int exponent = (bucket - 16) / 4 + 4;
+        int sub = (bucket - 16) % 4;
+        return ((5L + sub) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * The calls recorded by a metric between its last reset and the time the snapshot was taken
+     */
+    public static final class Snapshot {
+        private final long[] values;
+        private final long elapsed;
+
+        private Snapshot(long[] values, long elapsed) {
+            this.values = values;
+            this.elapsed = elapsed;
+        }
+
+        public long getCount() {
+            return values[COUNT];
+        }
+
+        public long getTotal() {
+            return values[TOTAL];
+        }
+
+        public long getMax() {
+            return values[MAX];
+        }
+
+        /**
+         * Gets the number of calls per second since the last reset
+         * @return The call rate
+         */
+        public double getRate() {
+            return elapsed > 0 ? values[COUNT] * 1000000000D / elapsed : 0;
+        }
+
+        /**
+         * Gets the time which the specified fraction of the calls didn't exceed
+         * @param fraction The fraction, such as 0.99 for the 99th percentile
+         * @return The upper bound of the percentile's bucket, in nanoseconds
+         */
+        public long getPercentile(double fraction) {
+            long count = values[COUNT];
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += values[i];
+                if (seen >= target) {
+                    return Math.min(upper(i), values[MAX]);
+                }
+            }
+            return values[MAX];
+        }
+    }
+
+}
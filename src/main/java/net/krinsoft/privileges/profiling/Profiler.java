@@ -0,0 +1,58 @@
+package net.krinsoft.privileges.profiling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of Privileges' always-on latency metrics. Metrics outlive reloads, so the managers which are recreated on
+ * a reload keep recording into the same metrics.
+ * @author krinsdeath
+ */
+public class Profiler {
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+    /**
+     * Gets the metric with the specified name, creating it if necessary
+     * @param name The metric's name
+     * @return The metric
+     */
+    public Metric get(String name) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            Metric created = new Metric(name);
+            metric = metrics.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+            }
+        }
+        return metric;
+    }
+
+    /**
+     * Gets every metric, sorted by name
+     * @return The list of metrics
+     */
+    public List<Metric> getMetrics() {
+        List<Metric> list = new ArrayList<Metric>(metrics.values());
+        Collections.sort(list, new Comparator<Metric>() {
+            public int compare(Metric a, Metric b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Resets every metric
+     */
+    public void reset() {
+        for (Metric metric : metrics.values()) {
+            metric.reset();
+        }
+    }
+
+}
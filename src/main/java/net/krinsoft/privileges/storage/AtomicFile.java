@@ -0,0 +1,283 @@
+package net.krinsoft.privileges.storage;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Crash-safe reads and writes of Privileges' YAML files.<br>
+ * A file is written to a temporary file, synced to disk and then moved over the original, which is kept as the previous
+ * generation. Each generation's SHA-256 checksum is stored next to it, so a damaged file can be detected when it's loaded.
+ * @author krinsdeath
+ */
+public class AtomicFile {
+
+    private AtomicFile() {
+    }
+
+    /**
+     * Atomically replaces the specified file with the given contents, keeping the current file as the previous generation
+     * @param file The file to write
+     * @param data The new contents of the file
+     * @return The checksum of the new contents
+     * @throws IOException If the file couldn't be written
+     */
+    public static String write(File file, String data) throws IOException {
+        byte[] bytes = data.getBytes("UTF-8");
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        sync(temp, bytes);
+        if (file.exists()) {
+            // keep the current file as the fallback generation
+            move(file, getBackup(file));
+            File checksum = getChecksum(file);
+            if (checksum.exists()) {
+                move(checksum, getChecksum(getBackup(file)));
+            }
+        }
+        move(temp, file);
+        String digest = sha256(bytes);
+        writeChecksum(file, digest);
+        return digest;
+    }
+
+    /**
+     * Atomically replaces the specified file with the given contents, without keeping a previous generation or a checksum
+     * @param file The file to write
+     * @param data The new contents of the file
+     * @param sync Whether to sync the contents to disk before the file is replaced
+     * @throws IOException If the file couldn't be written
+     */
+    public static void replace(File file, String data, boolean sync) throws IOException {
+        replace(file, data.getBytes("UTF-8"), sync);
+    }
+
+    static void replace(File file, byte[] data, boolean sync) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        if (sync) {
+            sync(temp, data);
+        } else {
+            Files.write(data, temp);
+        }
+        move(temp, file);
+    }
+
+    /**
+     * Loads the specified YAML file, verifying it against its stored checksum.<br>
+     * If the file is missing, empty or unreadable, the previous generation is loaded instead. A file which doesn't match its
+     * checksum was edited by hand; its edits are only accepted, and its checksum rewritten, while
+     * {@link Privileges#acceptsEdits()} is true. Otherwise a copy is kept next to it, and the previous generation is loaded
+     * if it matches its own checksum. While the file matches its binary snapshot, the snapshot is loaded instead of parsing
+     * the file.
+     * @param plugin The plugin instance
+     * @param file The file to load
+     * @return The loaded configuration, which is empty if neither generation could be read
+     */
+    public static FileConfiguration load(Privileges plugin, File file) {
+        new File(file.getPath() + ".tmp").delete();
+        byte[] bytes = read(plugin, file);
+        String digest = bytes != null ? sha256(bytes) : null;
+        boolean edited = bytes != null && !matches(file, digest);
+        if (edited) {
+            if (plugin.acceptsEdits()) {
+                edited = false;
+                plugin.log(file.getName() + " doesn't match its checksum; accepting the edits.");
+                try {
+                    writeChecksum(file, digest);
+                } catch (IOException e) {
+                    plugin.warn("Unable to update the checksum of " + file.getName() + ": " + e.getLocalizedMessage());
+                }
+            } else {
+                keepEdits(plugin, file);
+            }
+        }
+        if (bytes != null && !edited) {
+            FileConfiguration config = parse(plugin, file, bytes, digest, true);
+            if (config != null) {
+                return config;
+            }
+        }
+        File backup = getBackup(file);
+        if (backup.exists()) {
+            plugin.warn(file.getName() + " is " + (edited ? "edited" : "missing or damaged") + "; falling back to the last good copy in " + backup.getName() + ".");
+            byte[] previous = read(plugin, backup);
+            if (previous != null && matches(backup, sha256(previous))) {
+                FileConfiguration config = parse(plugin, backup, previous, null, false);
+                if (config != null) {
+                    return config;
+                }
+            }
+            plugin.warn(backup.getName() + " couldn't be read or doesn't match its checksum either!");
+        } else if (file.exists() && !edited) {
+            plugin.warn(file.getName() + " couldn't be read, and there's no previous generation to fall back to!");
+        }
+        if (edited) {
+            // an empty document would replace every stored entry on the next save
+            plugin.warn("There's no good copy to fall back to, so the edited " + file.getName() + " is loaded anyway.");
+            FileConfiguration config = parse(plugin, file, bytes, digest, true);
+            if (config != null) {
+                return config;
+            }
+        }
+        return new YamlConfiguration();
+    }
+
+    private static byte[] read(Privileges plugin, File file) {
+        if (!file.exists() || file.length() == 0) {
+            return null;
+        }
+        try {
+            return Files.toByteArray(file);
+        } catch (IOException e) {
+            plugin.warn("Unable to read " + file.getName() + ": " + e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    private static FileConfiguration parse(Privileges plugin, File file, byte[] bytes, String digest, boolean snapshot) {
+        try {
+            if (snapshot) {
+                FileConfiguration config = Snapshot.load(plugin, file, digest);
+                if (config != null) {
+                    plugin.debug("Loaded " + file.getName() + " from its snapshot.");
+                    return config;
+                }
+            }
+            YamlConfiguration config = new YamlConfiguration();
+            config.loadFromString(new String(bytes, "UTF-8"));
+            if (snapshot) {
+                // so the next start doesn't have to parse the file again
+                writeSnapshot(plugin, file, digest, Snapshot.encode(config));
+            }
+            return config;
+        } catch (IOException e) {
+            plugin.warn("Unable to read " + file.getName() + ": " + e.getLocalizedMessage());
+        } catch (InvalidConfigurationException e) {
+            plugin.warn(file.getName() + " is not valid YAML: " + e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Checks the specified digest against the file's stored checksum. Files written before checksums were stored have
+     * nothing to check against, so they always match.
+     * @param file The file
+     * @param digest The digest of the file's contents
+     * @return true if the digest matches, otherwise false
+     */
+    private static boolean matches(File file, String digest) {
+        File checksum = getChecksum(file);
+        if (!checksum.exists()) {
+            return true;
+        }
+        try {
+            return Files.toString(checksum, Charsets.UTF_8).trim().equals(digest);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies a file which was edited by hand next to it, since the fallback generation replaces it on the next save
+     * @param plugin The plugin instance
+     * @param file The edited file
+     */
+    private static void keepEdits(Privileges plugin, File file) {
+        File copy = new File(file.getPath() + ".edited");
+        try {
+            Files.copy(file, copy);
+            plugin.warn(file.getName() + " doesn't match its checksum, so it was probably edited by hand. The edits were kept in " + copy.getName() + ";"
+                    + " use '/priv load --force' or set 'storage.accept_edits' to accept them.");
+        } catch (IOException e) {
+            plugin.warn(file.getName() + " doesn't match its checksum, and couldn't be copied to " + copy.getName() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private static void writeChecksum(File file, String digest) throws IOException {
+        File checksum = getChecksum(file);
+        File temp = new File(checksum.getPath() + ".tmp");
+        sync(temp, digest.getBytes("UTF-8"));
+        move(temp, checksum);
+    }
+
+    /**
+     * Stores the binary snapshot of the specified YAML file, or removes it if the document couldn't be encoded. A snapshot
+     * is only a shortcut, so a failure is logged but not thrown.
+     * @param plugin The plugin instance
+     * @param file The YAML file
+     * @param checksum The checksum of the YAML file's current contents
+     * @param snapshot The encoded document, or null
+     */
+    static void writeSnapshot(Privileges plugin, File file, String checksum, byte[] snapshot) {
+        if (snapshot == null) {
+            Snapshot.delete(file);
+            return;
+        }
+        try {
+            Snapshot.write(file, checksum, snapshot);
+        } catch (IOException e) {
+            Snapshot.delete(file);
+            plugin.debug("Unable to write the snapshot of " + file.getName() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private static void sync(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void move(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            // some platforms can't rename over an existing file
+            if (!to.delete() || !from.renameTo(to)) {
+                throw new IOException("Unable to move " + from.getName() + " to " + to.getName());
+            }
+        }
+    }
+
+    private static File getBackup(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    private static File getChecksum(File file) {
+        return new File(file.getPath() + ".sha256");
+    }
+
+    /**
+     * Creates a hexadecimal SHA-256 digest of the specified bytes
+     * @param bytes The bytes to digest
+     * @return The digest, as a string
+     */
+    static String sha256(byte[] bytes) {
+        try {
+            StringBuilder checksum = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                checksum.append(String.format("%02x", b));
+            }
+            return checksum.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't available.", e);
+        }
+    }
+
+}
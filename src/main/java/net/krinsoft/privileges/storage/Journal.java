@@ -0,0 +1,157 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.Privileges;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only log of changed user and group records, kept next to users.yml and groups.yml.<br>
+ * Each batch of changes is appended and synced to disk in one go, followed by a commit line, so a batch which was cut
+ * off by a crash is ignored when the journal is replayed. Every line is stamped with the time it was written, which makes
+ * the journal an audit trail of the changes since the last compaction; the journal from before that is kept as
+ * journal.log.old.
+ * @author krinsdeath
+ */
+class Journal {
+    private final File file;
+    // the number of entries in the journal
+    private int size;
+
+    Journal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads every committed entry from the journal, in the order they were written
+     * @param plugin The plugin instance
+     * @return The committed entries
+     * @throws IOException If the journal couldn't be read
+     */
+    List<Entry> read(Privileges plugin) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        size = 0;
+        if (!file.exists()) {
+            return entries;
+        }
+        List<Entry> batch = new ArrayList<Entry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 3 && fields[1].equals("commit") && fields[2].equals(String.valueOf(batch.size()))) {
+                    entries.addAll(batch);
+                    batch.clear();
+                } else if (fields.length == 5 && (fields[3].equals("put") || fields[3].equals("remove"))) {
+                    batch.add(new Entry(fields[1], fields[2], fields[3].equals("put") ? unescape(fields[4]) : null));
+                } else {
+                    plugin.warn("Ignoring a damaged line in " + file.getName() + ".");
+                    batch.clear();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (!batch.isEmpty()) {
+            plugin.warn("Ignoring " + batch.size() + " uncommitted change(s) at the end of " + file.getName() + ".");
+        }
+        size = entries.size();
+        return entries;
+    }
+
+    /**
+     * Appends a batch of entries to the journal, and syncs it to disk
+     * @param batch The entries to append
+     * @throws IOException If the batch couldn't be written
+     */
+    void append(List<Entry> batch) throws IOException {
+        if (batch.isEmpty()) { return; }
+        String time = String.valueOf(System.currentTimeMillis());
+        StringBuilder lines = new StringBuilder();
+        for (Entry entry : batch) {
+            lines.append(time).append('\t').append(entry.type).append('\t').append(entry.name).append('\t');
+            if (entry.data != null) {
+                lines.append("put\t").append(escape(entry.data));
+            } else {
+                lines.append("remove\t");
+            }
+            lines.append('\n');
+        }
+        lines.append(time).append("\tcommit\t").append(batch.size()).append('\n');
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(lines.toString().getBytes("UTF-8"));
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        size += batch.size();
+    }
+
+    /**
+     * Starts a new, empty journal once its entries were written to the base files
+     * @throws IOException If the journal couldn't be moved aside
+     */
+    void reset() throws IOException {
+        if (file.exists()) {
+            File old = new File(file.getPath() + ".old");
+            old.delete();
+            if (!file.renameTo(old)) {
+                throw new IOException("Unable to move " + file.getName() + " aside.");
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Gets the number of entries written since the last compaction
+     * @return The number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    private static String escape(String data) {
+        return data.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    }
+
+    private static String unescape(String data) {
+        StringBuilder out = new StringBuilder(data.length());
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '\\' && i + 1 < data.length()) {
+                char next = data.charAt(++i);
+                out.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next == 't' ? '\t' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * A single changed record
+     */
+    static class Entry {
+        // either 'user' or 'group'
+        final String type;
+        final String name;
+        // the record as a YAML document, or null if it was removed
+        final String data;
+
+        Entry(String type, String name, String data) {
+            this.type = type;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+}
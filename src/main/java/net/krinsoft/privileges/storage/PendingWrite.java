@@ -0,0 +1,17 @@
+package net.krinsoft.privileges.storage;
+
+import java.io.IOException;
+
+/**
+ * A snapshot of changed records, captured while the records are locked and written later without holding the lock
+ * @author krinsdeath
+ */
+public interface PendingWrite {
+
+    /**
+     * Writes the captured records to the backend
+     * @throws IOException If the records couldn't be written
+     */
+    public void write() throws IOException;
+
+}
@@ -0,0 +1,183 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of parsed user records for the storage backends which read users on demand.<br>
+ * Records are evicted least recently used first once the cache is full, or once they haven't been used for the expiry time.
+ * Pinned records (those of online players) and records with changes that haven't been written yet are never evicted.
+ * @author krinsdeath
+ */
+class RecordCache {
+    // the maximum number of records to keep once nothing more can be evicted
+    private final int size;
+    // the time after which an unused record is evicted, in milliseconds
+    private final long expiry;
+    // the cached records, least recently used first; a null record has been removed
+    private final LinkedHashMap<String, Record> records = new LinkedHashMap<String, Record>(16, 0.75F, true);
+    // the names of the records which changed since the last snapshot
+    private final Set<String> dirty = new HashSet<String>();
+    // the names of the records which have been snapshotted, but not written yet
+    private final Set<String> writing = new HashSet<String>();
+    // the names of the records which are never evicted
+    private final Set<String> pinned = new HashSet<String>();
+
+    RecordCache(int size, long expiry) {
+        this.size = Math.max(1, size);
+        this.expiry = expiry;
+    }
+
+    /**
+     * Creates a cache with the size and expiry set in config.yml
+     * @param plugin The plugin instance
+     * @return The new cache
+     */
+    static RecordCache fromConfig(Privileges plugin) {
+        return new RecordCache(plugin.getConfig().getInt("storage.cache.size", 1000), plugin.getConfig().getLong("storage.cache.expiry", 900) * 1000L);
+    }
+
+    /**
+     * Checks whether the specified record is cached, including records which were removed but not written yet
+     * @param name The record's name
+     * @return true if the record is cached, otherwise false
+     */
+    synchronized boolean contains(String name) {
+        return records.containsKey(name);
+    }
+
+    /**
+     * Fetches the specified record, marking it as recently used
+     * @param name The record's name
+     * @return The record, or null if it isn't cached or was removed
+     */
+    synchronized ConfigurationSection get(String name) {
+        Record record = records.get(name);
+        if (record == null) {
+            return null;
+        }
+        record.used = System.currentTimeMillis();
+        return record.node;
+    }
+
+    /**
+     * Caches a record which was just read from the backend
+     * @param name The record's name
+     * @param node The record
+     */
+    synchronized void load(String name, ConfigurationSection node) {
+        records.put(name, new Record(node));
+        evict();
+    }
+
+    /**
+     * Caches a changed record, which is kept until it's written
+     * @param name The record's name
+     * @param node The record, or null if it was removed
+     */
+    synchronized void set(String name, ConfigurationSection node) {
+        records.put(name, new Record(node));
+        dirty.add(name);
+        evict();
+    }
+
+    /**
+     * Takes the records which changed since the last snapshot. They stay cached until they're written or the write fails.
+     * @return The changed records by name, with null records to be removed
+     */
+    synchronized Map<String, ConfigurationSection> takeDirty() {
+        Map<String, ConfigurationSection> changed = new HashMap<String, ConfigurationSection>();
+        for (String name : dirty) {
+            Record record = records.get(name);
+            changed.put(name, record != null ? record.node : null);
+        }
+        writing.addAll(dirty);
+        dirty.clear();
+        return changed;
+    }
+
+    /**
+     * Marks the specified records as written, so they can be evicted again
+     * @param names The names of the written records
+     */
+    synchronized void written(Set<String> names) {
+        writing.removeAll(names);
+        evict();
+    }
+
+    /**
+     * Marks the specified records as changed again, after their write failed
+     * @param names The names of the records which weren't written
+     */
+    synchronized void failed(Set<String> names) {
+        writing.removeAll(names);
+        dirty.addAll(names);
+    }
+
+    /**
+     * Gets the records which changed but haven't been written yet
+     * @return A map of record names to whether the record exists
+     */
+    synchronized Map<String, Boolean> getPending() {
+        Map<String, Boolean> pending = new HashMap<String, Boolean>();
+        Set<String> names = new HashSet<String>(writing);
+        names.addAll(dirty);
+        for (String name : names) {
+            Record record = records.get(name);
+            pending.put(name, record != null && record.node != null);
+        }
+        return pending;
+    }
+
+    synchronized void pin(String name) {
+        pinned.add(name);
+    }
+
+    synchronized void unpin(String name) {
+        pinned.remove(name);
+        evict();
+    }
+
+    /**
+     * Gets the number of cached records
+     * @return The number of records
+     */
+    synchronized int size() {
+        return records.size();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        int excess = records.size() - size;
+        Iterator<Map.Entry<String, Record>> iterator = records.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Record> entry = iterator.next();
+            boolean expired = now - entry.getValue().used >= expiry;
+            if (excess <= 0 && !expired) {
+                // every record after this one was used more recently
+                break;
+            }
+            String name = entry.getKey();
+            if (pinned.contains(name) || dirty.contains(name) || writing.contains(name)) { continue; }
+            iterator.remove();
+            excess--;
+        }
+    }
+
+    private static class Record {
+        private final ConfigurationSection node;
+        private long used = System.currentTimeMillis();
+
+        private Record(ConfigurationSection node) {
+            this.node = node;
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.groups.MemberIndex;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores every user in its own small file under the 'users' folder, spread over hashed bucket folders, and groups in
+ * groups.yml.<br>
+ * An in-memory index of every user's file is built from the folder listing, so only the users which are actually touched
+ * are read and only a bounded number of them is kept, and a write only replaces the files of the users which changed.
+ * User names are always stored in lower case; mixed case names from users.yml are converted when it's imported.
+ * @author krinsdeath
+ */
+public class ShardedStorage implements Storage {
+    // the number of bucket folders the user files are spread over
+    private final static int BUCKETS = 256;
+
+    private final Privileges plugin;
+    private final File folder;
+    private final File groupFile;
+    private final FileConfiguration groups;
+    // the file of every stored user, by lower case name
+    private final Map<String, File> index = new HashMap<String, File>();
+    // the user records which have been read, and those which haven't been written yet
+    private final RecordCache users;
+
+    public ShardedStorage(Privileges plugin) throws IOException {
+        this.plugin = plugin;
+        this.users = RecordCache.fromConfig(plugin);
+        this.folder = new File(plugin.getDataFolder(), "users");
+        this.groupFile = new File(plugin.getDataFolder(), "groups.yml");
+        this.groups = YamlStorage.loadGroups(plugin, groupFile);
+        if (folder.isDirectory()) {
+            buildIndex();
+        } else {
+            importUsers();
+        }
+    }
+
+    public String getName() {
+        return "sharded";
+    }
+
+    public ConfigurationSection getUser(String name) {
+        if (!name.equals(name.toLowerCase())) {
+            return null;
+        }
+        if (users.contains(name)) {
+            return users.get(name);
+        }
+        File file = index.get(name);
+        if (file == null) {
+            return null;
+        }
+        FileConfiguration node = YamlConfiguration.loadConfiguration(file);
+        if (node.getKeys(false).isEmpty()) {
+            plugin.warn("The stored record for user '" + name + "' is empty or corrupt and was ignored.");
+            return null;
+        }
+        users.load(name, node);
+        return node;
+    }
+
+    public void setUser(String name, ConfigurationSection node) {
+        if (!name.equals(name.toLowerCase())) {
+            if (node == null) { return; }
+            name = name.toLowerCase();
+        }
+        users.set(name, node);
+        if (node != null) {
+            index.put(name, getFile(name));
+        } else {
+            index.remove(name);
+        }
+    }
+
+    public Set<String> getUsers() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public void indexUsers(final MemberIndex members) {
+        // every user file has to be parsed, so it's done on its own thread; users stored meanwhile keep their newer entry
+        final Map<String, File> files = new HashMap<String, File>(index);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                long time = System.nanoTime();
+                try {
+                    for (Map.Entry<String, File> entry : files.entrySet()) {
+                        if (!entry.getValue().exists()) { continue; }
+                        FileConfiguration node = YamlConfiguration.loadConfiguration(entry.getValue());
+                        if (!node.getKeys(false).isEmpty()) {
+                            members.load(entry.getKey(), node);
+                        }
+                    }
+                } finally {
+                    members.finishLoading();
+                }
+                plugin.debug("Indexed " + files.size() + " user files in " + ((System.nanoTime() - time) / 1000000L) + "ms.");
+            }
+        }, "Privileges Indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public FileConfiguration getGroups() {
+        return groups;
+    }
+
+    public PendingWrite snapshotUsers() {
+        final Map<String, String> records = new HashMap<String, String>();
+        for (Map.Entry<String, ConfigurationSection> record : users.takeDirty().entrySet()) {
+            records.put(record.getKey(), record.getValue() != null ? SqlStorage.serialize(record.getValue()) : null);
+        }
+        if (records.isEmpty()) {
+            return null;
+        }
+        return new PendingWrite() {
+            public void write() throws IOException {
+                try {
+                    for (Map.Entry<String, String> record : records.entrySet()) {
+                        File file = getFile(record.getKey());
+                        if (record.getValue() != null) {
+                            AtomicFile.replace(file, record.getValue(), true);
+                        } else if (file.exists() && !file.delete()) {
+                            throw new IOException("Unable to delete " + file.getPath());
+                        }
+                    }
+                } catch (IOException e) {
+                    // write the records again on the next flush, with whatever they contain by then
+                    users.failed(records.keySet());
+                    throw e;
+                }
+                users.written(records.keySet());
+                plugin.debug("Saved " + records.size() + " changed user file(s).");
+            }
+        };
+    }
+
+    public PendingWrite snapshotGroups() {
+        return new YamlStorage.FileWrite(plugin, groupFile, groups);
+    }
+
+    public void pin(String name) {
+        users.pin(name.toLowerCase());
+    }
+
+    public void unpin(String name) {
+        users.unpin(name.toLowerCase());
+    }
+
+    public void close() {
+    }
+
+    private File getFile(String name) {
+        String bucket = Integer.toHexString(BUCKETS + (name.hashCode() & (BUCKETS - 1))).substring(1);
+        return new File(new File(folder, bucket), name + ".yml");
+    }
+
+    private void buildIndex() {
+        File[] buckets = folder.listFiles();
+        if (buckets == null) { return; }
+        for (File bucket : buckets) {
+            File[] files = bucket.listFiles();
+            if (files == null) { continue; }
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(".yml")) { continue; }
+                index.put(name.substring(0, name.length() - 4), file);
+            }
+        }
+        plugin.debug("Indexed " + index.size() + " user files.");
+    }
+
+    private void importUsers() throws IOException {
+        File file = new File(plugin.getDataFolder(), "users.yml");
+        FileConfiguration source = file.exists() ? AtomicFile.load(plugin, file) : YamlStorage.getDefaultUsers(plugin);
+        ConfigurationSection section = source.getConfigurationSection("users");
+        // the users are imported into a separate folder, so an interrupted import is started over on the next load
+        File importing = new File(plugin.getDataFolder(), "users.importing");
+        importing.mkdirs();
+        Set<String> names = section != null ? section.getKeys(false) : Collections.<String>emptySet();
+        for (String user : names) {
+            ConfigurationSection node = section.getConfigurationSection(user);
+            // a lower case node takes precedence over a mixed case node for the same user
+            if (node == null || (!user.equals(user.toLowerCase()) && names.contains(user.toLowerCase()))) { continue; }
+            File target = getFile(user.toLowerCase());
+            File bucket = new File(importing, target.getParentFile().getName());
+            AtomicFile.replace(new File(bucket, target.getName()), SqlStorage.serialize(node), false);
+            index.put(user.toLowerCase(), target);
+        }
+        if (!importing.renameTo(folder)) {
+            throw new IOException("Unable to move the imported users into the 'users' folder.");
+        }
+        plugin.log("Imported " + index.size() + " users from users.yml into the 'users' folder.");
+    }
+
+}
@@ -0,0 +1,283 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.Privileges;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary copy of a parsed YAML file, which is stored next to the file and loaded instead of parsing it.<br>
+ * The snapshot records the checksum of the YAML it was made from, so it's only used while the YAML file is unchanged;
+ * a file which was edited by hand is parsed as usual.
+ * @author krinsdeath
+ */
+class Snapshot {
+    // "PRVS"
+    private final static int MAGIC = 0x50525653;
+    private final static byte VERSION = 1;
+
+    private final static byte SECTION = 0;
+    private final static byte STRING = 1;
+    private final static byte BOOLEAN = 2;
+    private final static byte INTEGER = 3;
+    private final static byte LONG = 4;
+    private final static byte DOUBLE = 5;
+    private final static byte LIST = 6;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Encodes the specified document. This has to be called while the document can't change.
+     * @param config The document to encode
+     * @return The encoded document, or null if it contains values which can't be encoded
+     */
+    static byte[] encode(FileConfiguration config) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            String header = config.options().header();
+            out.writeUTF(header != null ? header : "");
+            if (!writeSection(out, config)) {
+                return null;
+            }
+            out.flush();
+        } catch (IOException e) {
+            // a too long string, which the YAML file can hold anyway
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Stores an encoded document as the snapshot of the specified YAML file
+     * @param file The YAML file
+     * @param checksum The checksum of the YAML file's current contents
+     * @param body The encoded document
+     * @throws IOException If the snapshot couldn't be written
+     */
+    static void write(File file, String checksum, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(checksum);
+        out.writeLong(crc.getValue());
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+        AtomicFile.replace(getFile(file), bytes.toByteArray(), false);
+    }
+
+    /**
+     * Removes the snapshot of the specified YAML file
+     * @param file The YAML file
+     */
+    static void delete(File file) {
+        getFile(file).delete();
+    }
+
+    /**
+     * Loads the snapshot of the specified YAML file, if it was made from the file's current contents
+     * @param plugin The plugin instance
+     * @param file The YAML file
+     * @param checksum The checksum of the YAML file's current contents
+     * @return The loaded document, or null if there's no usable snapshot
+     */
+    static FileConfiguration load(Privileges plugin, File file, String checksum) {
+        File snapshot = getFile(file);
+        if (!snapshot.exists()) {
+            return null;
+        }
+        try {
+            byte[] bytes = read(snapshot);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION || !checksum.equals(readString(buffer))) {
+                return null;
+            }
+            long crc = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                plugin.debug(snapshot.getName() + " is damaged and was ignored.");
+                return null;
+            }
+            CRC32 actual = new CRC32();
+            actual.update(bytes, buffer.position(), length);
+            if (actual.getValue() != crc) {
+                plugin.debug(snapshot.getName() + " is damaged and was ignored.");
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.wrap(bytes, buffer.position(), length);
+            YamlConfiguration config = new YamlConfiguration();
+            String header = readString(in);
+            if (header.length() > 0) {
+                config.options().header(header);
+            }
+            readSection(in, config);
+            return config;
+        } catch (IOException e) {
+            plugin.debug("Unable to read " + snapshot.getName() + ": " + e.getLocalizedMessage());
+        } catch (BufferUnderflowException e) {
+            plugin.debug(snapshot.getName() + " is truncated and was ignored.");
+        } catch (RuntimeException e) {
+            // a damaged length or type which passed the checksum; the YAML file is parsed instead
+            plugin.debug(snapshot.getName() + " is damaged and was ignored: " + e);
+        }
+        return null;
+    }
+
+    private static File getFile(File file) {
+        return new File(file.getPath() + ".snap");
+    }
+
+    /**
+     * Reads the whole file into memory. The file isn't mapped, since a mapped file can't be replaced on Windows until
+     * the mapping is garbage collected.
+     * @param file The file to read
+     * @return The file's contents
+     * @throws IOException If the file couldn't be read, or is too large to be a snapshot
+     */
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("The file is too large");
+            }
+            byte[] bytes = new byte[(int) length];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static boolean writeSection(DataOutputStream out, ConfigurationSection section) throws IOException {
+        Map<String, Object> values = section.getValues(false);
+        out.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            if (!writeValue(out, entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof ConfigurationSection) {
+            out.writeByte(SECTION);
+            return writeSection(out, (ConfigurationSection) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                if (item instanceof ConfigurationSection || item instanceof List || !writeValue(out, item)) {
+                    return false;
+                }
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void readSection(ByteBuffer in, ConfigurationSection section) {
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            byte type = in.get();
+            if (type == SECTION) {
+                readSection(in, section.createSection(key));
+            } else {
+                section.set(key, readValue(in, type));
+            }
+        }
+    }
+
+    private static Object readValue(ByteBuffer in, byte type) {
+        switch (type) {
+            case STRING:
+                return readString(in);
+            case BOOLEAN:
+                return in.get() != 0;
+            case INTEGER:
+                return in.getInt();
+            case LONG:
+                return in.getLong();
+            case DOUBLE:
+                return in.getDouble();
+            case LIST:
+                int size = in.getInt();
+                if (size < 0 || size > in.remaining()) {
+                    throw new IllegalArgumentException("Invalid list size " + size);
+                }
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, in.get()));
+                }
+                return list;
+            default:
+                throw new IllegalArgumentException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Reads a string as it was written by {@link DataOutputStream#writeUTF(String)}
+     * @param in The buffer to read from
+     * @return The string
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        char[] chars = new char[length];
+        int count = 0;
+        int end = in.position() + length;
+        while (in.position() < end) {
+            int a = in.get() & 0xFF;
+            if (a < 0x80) {
+                chars[count++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0) {
+                int b = in.get() & 0x3F;
+                chars[count++] = (char) (((a & 0x1F) << 6) | b);
+            } else if ((a & 0xF0) == 0xE0) {
+                int b = in.get() & 0x3F;
+                int c = in.get() & 0x3F;
+                chars[count++] = (char) (((a & 0x0F) << 12) | (b << 6) | c);
+            } else {
+                throw new IllegalArgumentException("Malformed string");
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+}
@@ -0,0 +1,515 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.groups.MemberIndex;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores users and groups in an embedded SQLite database, with one row per user and per group.<br>
+ * User records are only read when they're first fetched and are kept in a bounded cache, and a write only upserts the
+ * records which changed since the previous snapshot. Each user's group, whether they have custom nodes and when they were
+ * last seen are also kept in their own columns, so the member index is built without reading any records. On first use,
+ * the tables are filled from users.yml and groups.yml.
+ * @author krinsdeath
+ */
+public class SqlStorage implements Storage {
+    private final Privileges plugin;
+    private final Connection connection;
+    // the user records fetched from the database, and those which haven't been written yet
+    private final RecordCache users;
+    private final FileConfiguration groups = new YamlConfiguration();
+    // each group's record as it was last written, by name
+    private Map<String, String> written = new HashMap<String, String>();
+
+    public SqlStorage(Privileges plugin) throws IOException {
+        this.plugin = plugin;
+        this.users = RecordCache.fromConfig(plugin);
+        File database = new File(plugin.getDataFolder(), "privileges.db");
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("The SQLite driver isn't available on this server.");
+        }
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+        } catch (SQLException e) {
+            throw failure("Unable to open " + database.getName(), e);
+        }
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS privileges_users (name VARCHAR(64) PRIMARY KEY, data TEXT NOT NULL, user_group VARCHAR(64), custom INTEGER, last_seen INTEGER)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS privileges_groups (name VARCHAR(64) PRIMARY KEY, data TEXT NOT NULL)");
+                upgradeUsers(statement);
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS privileges_users_group ON privileges_users (user_group)");
+            } finally {
+                statement.close();
+            }
+            loadGroups();
+            if (written.isEmpty()) {
+                importGroups();
+            }
+            if (isEmpty("privileges_users")) {
+                importUsers();
+            }
+        } catch (SQLException e) {
+            close();
+            throw failure("Unable to read " + database.getName(), e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return "sqlite";
+    }
+
+    public synchronized ConfigurationSection getUser(String name) {
+        if (users.contains(name)) {
+            return users.get(name);
+        }
+        try {
+            PreparedStatement select = connection.prepareStatement("SELECT data FROM privileges_users WHERE name = ?");
+            try {
+                select.setString(1, name);
+                ResultSet result = select.executeQuery();
+                if (!result.next()) {
+                    return null;
+                }
+                ConfigurationSection node = deserialize(result.getString(1));
+                if (node == null) {
+                    plugin.warn("The stored record for user '" + name + "' is corrupt and was ignored.");
+                    return null;
+                }
+                users.load(name, node);
+                return node;
+            } finally {
+                select.close();
+            }
+        } catch (SQLException e) {
+            plugin.warn("Unable to read the record for user '" + name + "': " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    public void setUser(String name, ConfigurationSection node) {
+        users.set(name, node);
+    }
+
+    public synchronized Set<String> getUsers() {
+        Set<String> names = new HashSet<String>();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery("SELECT name FROM privileges_users");
+                while (result.next()) {
+                    names.add(result.getString(1));
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            plugin.warn("Unable to list the stored users: " + e.getLocalizedMessage());
+        }
+        // apply the changes which haven't been saved yet
+        for (Map.Entry<String, Boolean> pending : users.getPending().entrySet()) {
+            if (pending.getValue()) {
+                names.add(pending.getKey());
+            } else {
+                names.remove(pending.getKey());
+            }
+        }
+        return names;
+    }
+
+    public synchronized void indexUsers(MemberIndex index) {
+        long time = System.nanoTime();
+        try {
+            describeUsers();
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery("SELECT name, user_group, custom, last_seen FROM privileges_users");
+                while (result.next()) {
+                    index.load(result.getString(1), result.getString(2), result.getInt(3) != 0, result.getLong(4));
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            plugin.warn("Unable to index the stored users: " + e.getLocalizedMessage());
+        }
+        index.finishLoading();
+        plugin.debug("Indexed the stored users in " + ((System.nanoTime() - time) / 1000000L) + "ms.");
+    }
+
+    public FileConfiguration getGroups() {
+        return groups;
+    }
+
+    public PendingWrite snapshotUsers() {
+        final Map<String, Row> records = new HashMap<String, Row>();
+        for (Map.Entry<String, ConfigurationSection> record : users.takeDirty().entrySet()) {
+            records.put(record.getKey(), record.getValue() != null ? new Row(record.getValue()) : null);
+        }
+        if (records.isEmpty()) {
+            return null;
+        }
+        return new PendingWrite() {
+            public void write() throws IOException {
+                try {
+                    writeUsers(records);
+                } catch (IOException e) {
+                    // write the records again on the next flush, with whatever they contain by then
+                    users.failed(records.keySet());
+                    throw e;
+                }
+                users.written(records.keySet());
+            }
+        };
+    }
+
+    public PendingWrite snapshotGroups() {
+        final Map<String, String> current = new HashMap<String, String>();
+        ConfigurationSection section = groups.getConfigurationSection("groups");
+        if (section != null) {
+            for (String group : section.getKeys(false)) {
+                ConfigurationSection node = section.getConfigurationSection(group);
+                if (node != null) {
+                    current.put(group, serialize(node));
+                }
+            }
+        }
+        return new PendingWrite() {
+            public void write() throws IOException {
+                writeGroups(current);
+            }
+        };
+    }
+
+    /**
+     * Upserts or deletes the specified user records in one transaction
+     * @param records The serialized user records by name, with null records to be deleted
+     * @throws IOException If the records couldn't be written
+     */
+    private synchronized void writeUsers(Map<String, Row> records) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement upsert = connection.prepareStatement("INSERT OR REPLACE INTO privileges_users (name, data, user_group, custom, last_seen) VALUES (?, ?, ?, ?, ?)");
+            PreparedStatement delete = connection.prepareStatement("DELETE FROM privileges_users WHERE name = ?");
+            try {
+                for (Map.Entry<String, Row> record : records.entrySet()) {
+                    Row row = record.getValue();
+                    if (row == null) {
+                        delete.setString(1, record.getKey());
+                        delete.addBatch();
+                    } else {
+                        upsert.setString(1, record.getKey());
+                        upsert.setString(2, row.data);
+                        upsert.setString(3, row.group);
+                        upsert.setInt(4, row.custom ? 1 : 0);
+                        upsert.setLong(5, row.seen);
+                        upsert.addBatch();
+                    }
+                }
+                upsert.executeBatch();
+                delete.executeBatch();
+                connection.commit();
+            } finally {
+                upsert.close();
+                delete.close();
+            }
+        } catch (SQLException e) {
+            rollback();
+            throw failure("Unable to save the user records", e);
+        } finally {
+            resetAutoCommit();
+        }
+        plugin.debug("Saved " + records.size() + " changed user record(s) to privileges.db");
+    }
+
+    /**
+     * Brings the stored group records in line with the specified records, writing only the groups which changed since
+     * the last write
+     * @param current Every serialized group record, by name
+     * @throws IOException If the records couldn't be written
+     */
+    private synchronized void writeGroups(Map<String, String> current) throws IOException {
+        int changed = 0;
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement upsert = connection.prepareStatement("INSERT OR REPLACE INTO privileges_groups (name, data) VALUES (?, ?)");
+            PreparedStatement delete = connection.prepareStatement("DELETE FROM privileges_groups WHERE name = ?");
+            try {
+                for (Map.Entry<String, String> entry : current.entrySet()) {
+                    if (entry.getValue().equals(written.get(entry.getKey()))) { continue; }
+                    upsert.setString(1, entry.getKey());
+                    upsert.setString(2, entry.getValue());
+                    upsert.addBatch();
+                    changed++;
+                }
+                for (String group : written.keySet()) {
+                    if (current.containsKey(group)) { continue; }
+                    delete.setString(1, group);
+                    delete.addBatch();
+                    changed++;
+                }
+                upsert.executeBatch();
+                delete.executeBatch();
+                connection.commit();
+            } finally {
+                upsert.close();
+                delete.close();
+            }
+        } catch (SQLException e) {
+            rollback();
+            throw failure("Unable to save the group records", e);
+        } finally {
+            resetAutoCommit();
+        }
+        written = current;
+        plugin.debug("Saved " + changed + " changed group record(s) to privileges.db");
+    }
+
+    public void pin(String name) {
+        users.pin(name);
+    }
+
+    public void unpin(String name) {
+        users.unpin(name);
+    }
+
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            plugin.warn("Unable to close privileges.db: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void loadGroups() throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery("SELECT name, data FROM privileges_groups");
+            while (result.next()) {
+                String group = result.getString(1);
+                ConfigurationSection node = deserialize(result.getString(2));
+                if (node == null) {
+                    plugin.warn("The stored record for group '" + group + "' is corrupt and was ignored.");
+                    continue;
+                }
+                ConfigurationSection section = groups.createSection("groups." + group);
+                copy(node, section);
+                written.put(group, serialize(section));
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void importGroups() throws IOException {
+        File file = new File(plugin.getDataFolder(), "groups.yml");
+        FileConfiguration source = file.exists() ? YamlConfiguration.loadConfiguration(file) : YamlStorage.getDefaultGroups(plugin);
+        ConfigurationSection section = source.getConfigurationSection("groups");
+        if (section == null) { return; }
+        for (String group : section.getKeys(false)) {
+            ConfigurationSection node = section.getConfigurationSection(group);
+            if (node != null) {
+                copy(node, groups.createSection("groups." + group));
+            }
+        }
+        snapshotGroups().write();
+        plugin.log("Imported " + written.size() + " groups into privileges.db");
+    }
+
+    private void importUsers() throws IOException {
+        File file = new File(plugin.getDataFolder(), "users.yml");
+        FileConfiguration source = file.exists() ? YamlConfiguration.loadConfiguration(file) : YamlStorage.getDefaultUsers(plugin);
+        ConfigurationSection section = source.getConfigurationSection("users");
+        if (section == null) { return; }
+        int imported = 0;
+        for (String user : section.getKeys(false)) {
+            ConfigurationSection node = section.getConfigurationSection(user);
+            if (node != null) {
+                setUser(user, node);
+                imported++;
+            }
+        }
+        // the imported records are evicted from the cache once they're written
+        PendingWrite write = snapshotUsers();
+        if (write != null) {
+            write.write();
+        }
+        plugin.log("Imported " + imported + " users into privileges.db");
+    }
+
+    /**
+     * Adds the columns which describe each user to a table created by an older version
+     * @param statement The statement to run the changes with
+     * @throws SQLException If the table couldn't be changed
+     */
+    private void upgradeUsers(Statement statement) throws SQLException {
+        Set<String> columns = new HashSet<String>();
+        ResultSet result = statement.executeQuery("PRAGMA table_info(privileges_users)");
+        while (result.next()) {
+            columns.add(result.getString("name").toLowerCase());
+        }
+        result.close();
+        if (!columns.contains("user_group")) {
+            statement.executeUpdate("ALTER TABLE privileges_users ADD COLUMN user_group VARCHAR(64)");
+            statement.executeUpdate("ALTER TABLE privileges_users ADD COLUMN custom INTEGER");
+            statement.executeUpdate("ALTER TABLE privileges_users ADD COLUMN last_seen INTEGER");
+        }
+    }
+
+    /**
+     * Fills the describing columns of the rows written by an older version, reading each of their records once
+     * @throws SQLException If the rows couldn't be read or updated
+     */
+    private void describeUsers() throws SQLException {
+        Map<String, Row> rows = new HashMap<String, Row>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery("SELECT name, data FROM privileges_users WHERE custom IS NULL");
+            while (result.next()) {
+                ConfigurationSection node = deserialize(result.getString(2));
+                if (node != null) {
+                    rows.put(result.getString(1), new Row(node));
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        if (rows.isEmpty()) { return; }
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement update = connection.prepareStatement("UPDATE privileges_users SET user_group = ?, custom = ?, last_seen = ? WHERE name = ?");
+            try {
+                for (Map.Entry<String, Row> row : rows.entrySet()) {
+                    update.setString(1, row.getValue().group);
+                    update.setInt(2, row.getValue().custom ? 1 : 0);
+                    update.setLong(3, row.getValue().seen);
+                    update.setString(4, row.getKey());
+                    update.addBatch();
+                }
+                update.executeBatch();
+                connection.commit();
+            } finally {
+                update.close();
+            }
+        } catch (SQLException e) {
+            rollback();
+            throw e;
+        } finally {
+            resetAutoCommit();
+        }
+        plugin.log("Described " + rows.size() + " stored users in privileges.db");
+    }
+
+    private boolean isEmpty(String table) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + table);
+            return !result.next() || result.getInt(1) == 0;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            plugin.warn("Unable to roll back privileges.db: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void resetAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            plugin.warn("Unable to reset privileges.db: " + e.getLocalizedMessage());
+        }
+    }
+
+    private IOException failure(String message, SQLException e) {
+        IOException exception = new IOException(message + ": " + e.getLocalizedMessage());
+        exception.initCause(e);
+        return exception;
+    }
+
+    /**
+     * Writes the specified record as a YAML document
+     * @param node The record
+     * @return The YAML document
+     */
+    static String serialize(ConfigurationSection node) {
+        YamlConfiguration yaml = new YamlConfiguration();
+        copy(node, yaml);
+        return yaml.saveToString();
+    }
+
+    /**
+     * Parses the specified YAML document into a record
+     * @param data The YAML document
+     * @return The record, or null if the document is invalid
+     */
+    static ConfigurationSection deserialize(String data) {
+        YamlConfiguration yaml = new YamlConfiguration();
+        try {
+            yaml.loadFromString(data);
+        } catch (InvalidConfigurationException e) {
+            return null;
+        }
+        return yaml;
+    }
+
+    /**
+     * Copies every value of one section into another
+     * @param from The section to copy
+     * @param to The section to copy into
+     */
+    static void copy(ConfigurationSection from, ConfigurationSection to) {
+        for (Map.Entry<String, Object> entry : from.getValues(false).entrySet()) {
+            if (entry.getValue() instanceof ConfigurationSection) {
+                copy((ConfigurationSection) entry.getValue(), to.createSection(entry.getKey()));
+            } else {
+                to.set(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * A user record serialized for the database, along with the columns which describe it
+     */
+    private static final class Row {
+        private final String data;
+        private final String group;
+        private final boolean custom;
+        private final long seen;
+
+        private Row(ConfigurationSection node) {
+            this.data = serialize(node);
+            this.group = node.getString("group");
+            this.custom = MemberIndex.hasCustomNodes(node);
+            this.seen = node.getLong("last_seen", 0);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.groups.MemberIndex;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A backend which persists Privileges' user and group records.<br>
+ * User records are handed out as configuration sections, and must be handed back through
+ * {@link #setUser(String, ConfigurationSection)} when they change, so the backend knows which records to write.
+ * @author krinsdeath
+ */
+public interface Storage {
+
+    /**
+     * Gets the name of this storage backend, as it's set in config.yml
+     * @return The backend's name
+     */
+    public String getName();
+
+    /**
+     * Fetches the specified user's record
+     * @param name The user's name, exactly as it's stored
+     * @return The user's record, or null if the user isn't stored
+     */
+    public ConfigurationSection getUser(String name);
+
+    /**
+     * Stores the specified user's record, replacing any existing record
+     * @param name The user's name
+     * @param node The user's record, or null to remove the user
+     */
+    public void setUser(String name, ConfigurationSection node);
+
+    /**
+     * Gets the names of every stored user
+     * @return The set of user names
+     */
+    public Set<String> getUsers();
+
+    /**
+     * Fills the specified index with every stored user, as cheaply as this backend allows, and marks it as filled. This
+     * is called once, right after the storage is loaded, and may finish on another thread.
+     * @param index The empty member index
+     */
+    public void indexUsers(MemberIndex index);
+
+    /**
+     * Gets the group document, with every group under the 'groups' section
+     * @return The group document
+     */
+    public FileConfiguration getGroups();
+
+    /**
+     * Captures the user records which changed since the last snapshot. This has to be called while the user records are
+     * locked, but the returned write can be performed later on another thread.
+     * @return The pending write, or null if no records changed
+     */
+    public PendingWrite snapshotUsers();
+
+    /**
+     * Captures the current group records. This has to be called on the main thread, but the returned write can be
+     * performed later on another thread. A newer snapshot always supersedes an older one which hasn't been written yet.
+     * @return The pending write
+     */
+    public PendingWrite snapshotGroups();
+
+    /**
+     * Keeps the specified user's record in memory until it's unpinned, such as while the player is online
+     * @param name The user's name
+     */
+    public void pin(String name);
+
+    /**
+     * Allows the specified user's record to be evicted from memory again
+     * @param name The user's name
+     */
+    public void unpin(String name);
+
+    /**
+     * Releases the backend's resources, discarding any unsaved changes
+     */
+    public void close();
+
+}
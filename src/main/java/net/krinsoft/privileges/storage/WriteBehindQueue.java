@@ -0,0 +1,165 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.profiling.Metric;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces changes to the user and group records into one flush per interval, written on a single dedicated thread.<br>
+ * User records are snapshotted when the flush runs, and only the newest group snapshot is kept, so the last write always
+ * wins no matter how many changes were queued.
+ * @author krinsdeath
+ */
+public class WriteBehindQueue {
+    private final Privileges plugin;
+    private final Storage storage;
+    // the lock which guards the user records
+    private final Object lock;
+    // the time to wait after a change before flushing it, in milliseconds
+    private final long interval;
+    private final ScheduledExecutorService writer;
+    // the time spent writing each flush
+    private final Metric flush_time;
+    private final Runnable flush = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+    // whether the user records changed since the last flush
+    private boolean users;
+    // the newest group snapshot, waiting to be written
+    private PendingWrite groups;
+    private ScheduledFuture<?> scheduled;
+
+    public WriteBehindQueue(Privileges plugin, Storage storage, Object lock, long interval) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.lock = lock;
+        this.interval = interval;
+        this.flush_time = plugin.getProfiler().get("storage.flush");
+        this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Privileges Writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Marks the user records as changed, so they're written on the next flush
+     */
+    public synchronized void markUsers() {
+        users = true;
+        schedule();
+    }
+
+    /**
+     * Queues a snapshot of the group records, replacing any snapshot which hasn't been written yet.<br>
+     * This has to be called on the main thread.
+     */
+    public synchronized void markGroups() {
+        groups = storage.snapshotGroups();
+        schedule();
+    }
+
+    /**
+     * Writes every queued change on the writer thread, and waits until it's done
+     */
+    public void flushNow() {
+        Future<?> future;
+        synchronized (this) {
+            if (writer.isShutdown()) { return; }
+            future = writer.submit(flush);
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            plugin.warn("An error occurred while flushing the queued changes: " + e.getCause());
+        }
+    }
+
+    /**
+     * Writes every queued change, and stops the writer thread
+     */
+    public void close() {
+        flushNow();
+        synchronized (this) {
+            writer.shutdown();
+        }
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.warn("The writer thread didn't stop in time; some changes may not have been saved.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled == null && !writer.isShutdown()) {
+            scheduled = writer.schedule(flush, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the queued changes. This only ever runs on the writer thread.
+     */
+    private void flush() {
+        long time = System.nanoTime();
+        boolean userChanges;
+        PendingWrite groupChanges;
+        synchronized (this) {
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+            userChanges = users;
+            users = false;
+            groupChanges = groups;
+            groups = null;
+        }
+        if (groupChanges == null && !userChanges) { return; }
+        if (groupChanges != null) {
+            try {
+                groupChanges.write();
+            } catch (IOException e) {
+                plugin.warn("An error occurred while saving the groups: " + e.getLocalizedMessage());
+                synchronized (this) {
+                    if (groups == null) {
+                        groups = groupChanges;
+                    }
+                    schedule();
+                }
+            }
+        }
+        if (userChanges) {
+            PendingWrite write;
+            synchronized (lock) {
+                write = storage.snapshotUsers();
+            }
+            if (write != null) {
+                try {
+                    long start = System.nanoTime();
+                    write.write();
+                    plugin.debug("Flushed the user records in " + ((System.nanoTime() - start) / 1000000L) + "ms.");
+                } catch (IOException e) {
+                    plugin.warn("An error occurred while saving the users: " + e.getLocalizedMessage());
+                    markUsers();
+                }
+            }
+        }
+        flush_time.since(time);
+    }
+
+}
@@ -0,0 +1,335 @@
+package net.krinsoft.privileges.storage;
+
+import net.krinsoft.privileges.Privileges;
+import net.krinsoft.privileges.groups.MemberIndex;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores users and groups in users.yml and groups.yml, which are kept in memory.<br>
+ * Changed records are appended to journal.log, and the journal is compacted into the base files once it grows past
+ * 'storage.journal.compact_after' entries, when the storage is closed, and when it's replayed after a crash. With the
+ * journal disabled, both files are atomically rewritten whole on every write.
+ * @author krinsdeath
+ */
+public class YamlStorage implements Storage {
+    private final Privileges plugin;
+    private final File userFile;
+    private final File groupFile;
+    private final FileConfiguration users;
+    private final FileConfiguration groups;
+    private final Journal journal;
+    private final boolean journaling;
+    // the number of journal entries after which the journal is compacted
+    private final int compact_after;
+    // the names of the users which changed since the last snapshot
+    private final Set<String> dirty = new HashSet<String>();
+    // each group's record as it was last journaled, by name; only used on the writer thread
+    private Map<String, String> journaled = new HashMap<String, String>();
+    private volatile String groupHeader;
+
+    public YamlStorage(Privileges plugin) throws IOException {
+        this.plugin = plugin;
+        userFile = new File(plugin.getDataFolder(), "users.yml");
+        groupFile = new File(plugin.getDataFolder(), "groups.yml");
+        journal = new Journal(new File(plugin.getDataFolder(), "journal.log"));
+        journaling = plugin.getConfig().getBoolean("storage.journal.enabled", true);
+        compact_after = Math.max(1, plugin.getConfig().getInt("storage.journal.compact_after", 1000));
+        users = AtomicFile.load(plugin, userFile);
+        groups = loadGroups(plugin, groupFile);
+        if (users.getKeys(false).isEmpty() && !userFile.exists()) {
+            users.setDefaults(getDefaultUsers(plugin));
+            users.options().copyDefaults(true);
+            AtomicFile.write(userFile, users.saveToString());
+        }
+        replay();
+        journaled = serializeGroups();
+        groupHeader = groups.options().header();
+    }
+
+    /**
+     * Loads groups.yml, creating it from the bundled defaults if it doesn't exist yet
+     * @param plugin The plugin instance
+     * @param groupFile The location of groups.yml
+     * @return The group document
+     * @throws IOException If the default groups.yml couldn't be written
+     */
+    static FileConfiguration loadGroups(Privileges plugin, File groupFile) throws IOException {
+        FileConfiguration groups = AtomicFile.load(plugin, groupFile);
+        if (groups.getKeys(false).isEmpty() && !groupFile.exists()) {
+            groups.setDefaults(getDefaultGroups(plugin));
+            groups.options().header(
+                    "Group ranks determine the order they are promoted in.\n" +
+                            "Lowest rank is 1, highest rank is 2,147,483,647.\n" +
+                            "Visit https://github.com/krinsdeath/Privileges/wiki for help with configuration\n" +
+                            "World nodes override global nodes for that group\n" +
+                            "Inherited groups are calculated first. Each group in the tree overrides any nodes\n" +
+                            "from the previous group.");
+            groups.options().copyDefaults(true);
+            AtomicFile.write(groupFile, groups.saveToString());
+        }
+        return groups;
+    }
+
+    public String getName() {
+        return "yaml";
+    }
+
+    public ConfigurationSection getUser(String name) {
+        return users.getConfigurationSection("users." + name);
+    }
+
+    public void setUser(String name, ConfigurationSection node) {
+        users.set("users." + name, node);
+        synchronized (dirty) {
+            dirty.add(name);
+        }
+    }
+
+    public Set<String> getUsers() {
+        ConfigurationSection section = users.getConfigurationSection("users");
+        if (section == null) {
+            return Collections.emptySet();
+        }
+        return section.getKeys(false);
+    }
+
+    public void indexUsers(MemberIndex index) {
+        // every user is already parsed into users.yml's document
+        long time = System.nanoTime();
+        ConfigurationSection section = users.getConfigurationSection("users");
+        if (section != null) {
+            for (String name : section.getKeys(false)) {
+                ConfigurationSection node = section.getConfigurationSection(name);
+                if (node != null) {
+                    index.load(name, node);
+                }
+            }
+        }
+        index.finishLoading();
+        plugin.debug("Indexed the stored users in " + ((System.nanoTime() - time) / 1000000L) + "ms.");
+    }
+
+    public FileConfiguration getGroups() {
+        return groups;
+    }
+
+    public PendingWrite snapshotUsers() {
+        if (!journaling || journal.size() >= compact_after) {
+            synchronized (dirty) {
+                dirty.clear();
+            }
+            // only the copy is taken while the users are locked; it's dumped and encoded on the writer thread
+            final FileConfiguration copy = copyUsers();
+            final boolean compacting = journal.size() > 0;
+            return new PendingWrite() {
+                public void write() throws IOException {
+                    new FileWrite(plugin, userFile, copy).write();
+                    if (compacting) {
+                        // the journaled group changes are written to groups.yml at the same time
+                        new FileWrite(plugin, groupFile, buildGroups(journaled, groupHeader)).write();
+                        journal.reset();
+                        plugin.debug("Compacted journal.log into users.yml and groups.yml.");
+                    }
+                }
+            };
+        }
+        final List<Journal.Entry> batch = new ArrayList<Journal.Entry>();
+        synchronized (dirty) {
+            for (String name : dirty) {
+                ConfigurationSection node = getUser(name);
+                batch.add(new Journal.Entry("user", name, node != null ? SqlStorage.serialize(node) : null));
+            }
+            dirty.clear();
+        }
+        if (batch.isEmpty()) {
+            return null;
+        }
+        return new PendingWrite() {
+            public void write() throws IOException {
+                try {
+                    journal.append(batch);
+                } catch (IOException e) {
+                    // journal the records again on the next flush, with whatever they contain by then
+                    synchronized (dirty) {
+                        for (Journal.Entry entry : batch) {
+                            dirty.add(entry.name);
+                        }
+                    }
+                    throw e;
+                }
+            }
+        };
+    }
+
+    public PendingWrite snapshotGroups() {
+        if (!journaling) {
+            return new FileWrite(plugin, groupFile, groups);
+        }
+        groupHeader = groups.options().header();
+        final Map<String, String> current = serializeGroups();
+        return new PendingWrite() {
+            public void write() throws IOException {
+                List<Journal.Entry> batch = new ArrayList<Journal.Entry>();
+                for (Map.Entry<String, String> entry : current.entrySet()) {
+                    if (!entry.getValue().equals(journaled.get(entry.getKey()))) {
+                        batch.add(new Journal.Entry("group", entry.getKey(), entry.getValue()));
+                    }
+                }
+                for (String group : journaled.keySet()) {
+                    if (!current.containsKey(group)) {
+                        batch.add(new Journal.Entry("group", group, null));
+                    }
+                }
+                journal.append(batch);
+                journaled = current;
+            }
+        };
+    }
+
+    public void pin(String name) {
+        // every user is kept in the users.yml document anyway
+    }
+
+    public void unpin(String name) {
+    }
+
+    public void close() {
+        if (journal.size() == 0) { return; }
+        try {
+            compact();
+        } catch (IOException e) {
+            plugin.warn("Unable to compact journal.log; it will be replayed on the next start: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Applies the committed changes in the journal to the loaded files, and compacts them into the base files
+     * @throws IOException If the journal couldn't be read or compacted
+     */
+    private void replay() throws IOException {
+        List<Journal.Entry> entries = journal.read(plugin);
+        if (entries.isEmpty()) { return; }
+        for (Journal.Entry entry : entries) {
+            ConfigurationSection node = entry.data != null ? SqlStorage.deserialize(entry.data) : null;
+            if (entry.data != null && node == null) {
+                plugin.warn("The journaled record for " + entry.type + " '" + entry.name + "' is corrupt and was ignored.");
+                continue;
+            }
+            String path = (entry.type.equals("user") ? "users." : "groups.") + entry.name;
+            FileConfiguration config = entry.type.equals("user") ? users : groups;
+            if (node != null) {
+                SqlStorage.copy(node, config.createSection(path));
+            } else {
+                config.set(path, null);
+            }
+        }
+        plugin.log("Replayed " + entries.size() + " change(s) from journal.log.");
+        compact();
+    }
+
+    /**
+     * Writes the loaded files over the base files, and starts a new journal. This can't run while the writer is running.
+     * @throws IOException If either file couldn't be written
+     */
+    private void compact() throws IOException {
+        new FileWrite(plugin, userFile, users).write();
+        new FileWrite(plugin, groupFile, groups).write();
+        journal.reset();
+    }
+
+    /**
+     * Copies the user document's structure. The stored records are replaced rather than changed, so their values are shared.
+     * @return The copy
+     */
+    private FileConfiguration copyUsers() {
+        YamlConfiguration copy = new YamlConfiguration();
+        copy.options().header(users.options().header());
+        SqlStorage.copy(users, copy);
+        return copy;
+    }
+
+    private Map<String, String> serializeGroups() {
+        Map<String, String> current = new HashMap<String, String>();
+        ConfigurationSection section = groups.getConfigurationSection("groups");
+        if (section != null) {
+            for (String group : section.getKeys(false)) {
+                ConfigurationSection node = section.getConfigurationSection(group);
+                if (node != null) {
+                    current.put(group, SqlStorage.serialize(node));
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Builds a group document from serialized group records
+     * @param records The serialized group records, by name
+     * @param header The document's header
+     * @return The group document
+     */
+    private static FileConfiguration buildGroups(Map<String, String> records, String header) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.options().header(header);
+        for (Map.Entry<String, String> record : records.entrySet()) {
+            ConfigurationSection node = SqlStorage.deserialize(record.getValue());
+            if (node != null) {
+                SqlStorage.copy(node, config.createSection("groups." + record.getKey()));
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Loads the default users.yml bundled with the plugin
+     * @param plugin The plugin instance
+     * @return The default user document
+     */
+    static FileConfiguration getDefaultUsers(Privileges plugin) {
+        return YamlConfiguration.loadConfiguration(plugin.getClass().getResourceAsStream("/users.yml"));
+    }
+
+    /**
+     * Loads the default groups.yml bundled with the plugin
+     * @param plugin The plugin instance
+     * @return The default group document
+     */
+    static FileConfiguration getDefaultGroups(Privileges plugin) {
+        return YamlConfiguration.loadConfiguration(plugin.getClass().getResourceAsStream("/groups.yml"));
+    }
+
+    /**
+     * A serialized copy of a whole YAML file and its binary snapshot, waiting to be written over the file
+     */
+    static class FileWrite implements PendingWrite {
+        private final Privileges plugin;
+        private final File file;
+        private final String data;
+        private final byte[] snapshot;
+
+        FileWrite(Privileges plugin, File file, FileConfiguration config) {
+            this.plugin = plugin;
+            this.file = file;
+            this.data = config.saveToString();
+            this.snapshot = Snapshot.encode(config);
+        }
+
+        public void write() throws IOException {
+            String checksum = AtomicFile.write(file, data);
+            AtomicFile.writeSnapshot(plugin, file, checksum, snapshot);
+        }
+    }
+
+}